@@ -0,0 +1,131 @@
+package org.casbin.adapter;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.casbin.jcasbin.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MybatisAdapterBenchmark measures the adapter's load, save, add and remove paths
+ * against an embedded H2 database in MySQL compatibility mode.
+ *
+ * Run it with "mvn -P benchmark test-compile exec:exec". Parameters can be narrowed with
+ * -Djmh.args="-p ruleCount=1000 -prof gc", see the jmh.args property in pom.xml.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class MybatisAdapterBenchmark {
+    @Param({"1000", "100000", "1000000", "5000000"})
+    public int ruleCount;
+
+    @Param({"3", "6"})
+    public int arity;
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    private PooledDataSource dataSource;
+    private MybatisAdapter adapter;
+    private Model model;
+    private Model loaded;
+    private List<List<String>> batch;
+    private int round = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new PooledDataSource("org.h2.Driver",
+                "jdbc:h2:mem:casbin_bench;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        adapter = MybatisAdapter.builder().dataSource(dataSource).batchSize(batchSize).build();
+
+        model = newModel();
+        List<List<String>> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            rules.add(rule("user" + i, i));
+        }
+        model.addPolicies("p", "p", rules);
+        adapter.savePolicy(model);
+
+        loaded = newModel();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        adapter.close();
+        dataSource.forceCloseAll();
+    }
+
+    @Setup(Level.Invocation)
+    public void newBatch() {
+        round++;
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(rule("batch" + round, i));
+        }
+    }
+
+    @Benchmark
+    public Model loadPolicy() {
+        loaded.clearPolicy();
+        adapter.loadPolicy(loaded);
+        return loaded;
+    }
+
+    @Benchmark
+    public void savePolicy() {
+        adapter.savePolicy(model);
+    }
+
+    @Benchmark
+    public void addAndRemovePolicies() {
+        adapter.addPolicies("p", "p", batch);
+        adapter.removePolicies("p", "p", batch);
+    }
+
+    @Benchmark
+    public void addPoliciesAndRemoveFilteredPolicy() {
+        adapter.addPolicies("p", "p", batch);
+        adapter.removeFilteredPolicy("p", "p", 0, "batch" + round);
+    }
+
+    private Model newModel() {
+        StringBuilder tokens = new StringBuilder("v0");
+        for (int i = 1; i < arity; i++) {
+            tokens.append(", v").append(i);
+        }
+        Model m = new Model();
+        m.addDef("r", "r", tokens.toString());
+        m.addDef("p", "p", tokens.toString());
+        m.addDef("g", "g", "_, _");
+        m.addDef("e", "e", "some(where (p.eft == allow))");
+        m.addDef("m", "m", "r.v0 == p.v0");
+        return m;
+    }
+
+    private List<String> rule(String subject, int i) {
+        List<String> rule = new ArrayList<>(arity);
+        rule.add(subject);
+        for (int j = 1; j < arity; j++) {
+            rule.add("value" + j + "_" + (i % 1000));
+        }
+        return rule;
+    }
+}
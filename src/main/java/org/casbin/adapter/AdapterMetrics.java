@@ -0,0 +1,73 @@
+package org.casbin.adapter;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+
+/**
+ * AdapterMetrics receives the measurements of MybatisAdapter.
+ * All methods do nothing by default, and the adapter skips timing entirely when NOOP is used.
+ *
+ * @see JmxAdapterMetrics
+ * @see MicrometerAdapterMetrics
+ */
+public interface AdapterMetrics {
+    /**
+     * NOOP is the default metrics, which records nothing.
+     */
+    AdapterMetrics NOOP = new AdapterMetrics() {
+    };
+
+    /**
+     * recordOperation records a call of an adapter operation, like "loadPolicy" or "addPolicies".
+     *
+     * @param operation the operation name.
+     * @param durationNanos how long the operation took, in nanoseconds.
+     * @param failed whether the operation threw an exception, like a SQL error.
+     */
+    default void recordOperation(String operation, long durationNanos, boolean failed) {
+    }
+
+    /**
+     * recordRows records the number of rows read or written by an operation.
+     *
+     * @param operation the operation name.
+     * @param rows the number of rows.
+     */
+    default void recordRows(String operation, long rows) {
+    }
+
+    /**
+     * recordInterning records how much a load saved by sharing equal rule values.
+     *
+     * @param operation the operation name, like "loadPolicy".
+     * @param values the number of values looked up.
+     * @param distinctValues the number of distinct values kept.
+     * @param bytesSaved the estimated heap bytes saved.
+     */
+    default void recordInterning(String operation, long values, long distinctValues, long bytesSaved) {
+    }
+
+    /**
+     * recordBatch records the number of rows sent to the database in one JDBC batch.
+     *
+     * @param rows the number of rows in the batch.
+     */
+    default void recordBatch(int rows) {
+    }
+
+    /**
+     * recordSession records how long a SqlSession, and so its connection, has been held.
+     *
+     * @param durationNanos the time between opening and closing the session, in nanoseconds.
+     */
+    default void recordSession(long durationNanos) {
+    }
+
+    /**
+     * bindConnectionPool is called with the connection pool built by the adapter,
+     * so that its state can be published as gauges.
+     *
+     * @param pool the connection pool.
+     */
+    default void bindConnectionPool(PooledDataSource pool) {
+    }
+}
@@ -0,0 +1,118 @@
+package org.casbin.adapter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * AsyncRunner runs adapter operations on an executor with a bounded number of operations in flight.
+ * When the limit is reached, the submitting thread waits for a permit, which pushes back on callers
+ * instead of queueing an unbounded number of operations in front of the connection pool.
+ *
+ * Without an explicit executor, a virtual thread per task executor is used on Java 21 and later,
+ * and a fixed pool of maxInFlight daemon threads otherwise. It is created on first use and
+ * shut down by close(). A closed runner fails the operations submitted to it with a RejectedExecutionException.
+ */
+class AsyncRunner {
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final Executor executor;
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private ExecutorService ownedExecutor;
+    private boolean closed = false;
+
+    AsyncRunner(Executor executor, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Max in-flight operations must be positive: " + maxInFlight);
+        }
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<T> action) {
+        if (isClosed()) {
+            return failed(new RejectedExecutionException("The adapter is closed"));
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(e);
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return action.get();
+                } finally {
+                    permits.release();
+                }
+            }, getExecutor());
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            return failed(e);
+        }
+    }
+
+    CompletableFuture<Void> run(Runnable action) {
+        return submit(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    synchronized void close() {
+        closed = true;
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+            ownedExecutor = null;
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private synchronized Executor getExecutor() {
+        if (closed) {
+            // Closed while waiting for a permit.
+            throw new RejectedExecutionException("The adapter is closed");
+        }
+        if (executor != null) {
+            return executor;
+        }
+        if (ownedExecutor == null) {
+            ownedExecutor = newDefaultExecutor(maxInFlight);
+        }
+        return ownedExecutor;
+    }
+
+    private static ExecutorService newDefaultExecutor(int threads) {
+        try {
+            // Executors.newVirtualThreadPerTaskExecutor() only exists on Java 21 and later.
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "casbin-adapter-async-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+}
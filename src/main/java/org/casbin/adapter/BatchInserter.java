@@ -0,0 +1,96 @@
+package org.casbin.adapter;
+
+import org.apache.ibatis.session.SqlSession;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * BatchInserter writes rules through a BATCH SqlSession.
+ * Consecutive rules of the same table are grouped into multi-row INSERT statements of rowsPerStatement rows, so every full chunk
+ * has the same SQL and reuses one prepared statement, and the JDBC batch is flushed every batchSize rows.
+ * With an upsert dialect the chunks are written with Dialect.upsertRules(), and a rule already in the chunk is skipped.
+ */
+class BatchInserter {
+    private final SqlSession sqlSession;
+    private final CasbinRuleDao casbinRuleDao;
+    private final int rowsPerStatement;
+    private final int batchSize;
+    private final AdapterMetrics metrics;
+    private final Dialect upsertDialect;
+    private final Set<CasbinRule> pendingRules = new HashSet<>();
+    private List<CasbinRule> pending;
+    private String pendingTable;
+    private int unflushed = 0;
+    private long rows = 0;
+
+    BatchInserter(SqlSession sqlSession, int rowsPerStatement, int batchSize, AdapterMetrics metrics, Dialect upsertDialect) {
+        this.sqlSession = sqlSession;
+        this.casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+        this.rowsPerStatement = Math.max(1, Math.min(rowsPerStatement, batchSize));
+        this.batchSize = batchSize;
+        this.metrics = metrics;
+        this.upsertDialect = upsertDialect;
+        this.pending = new ArrayList<>(this.rowsPerStatement);
+    }
+
+    void add(String table, CasbinRule line) {
+        if (!table.equals(pendingTable)) {
+            writePending();
+            pendingTable = table;
+        }
+        if (upsertDialect != null && !pendingRules.add(line)) {
+            return;
+        }
+        pending.add(line);
+        if (pending.size() == rowsPerStatement) {
+            writePending();
+        }
+    }
+
+    void addAll(String table, List<CasbinRule> lines) {
+        for (CasbinRule line : lines) {
+            add(table, line);
+        }
+    }
+
+    void finish() {
+        writePending();
+        if (unflushed > 0) {
+            flush();
+        }
+    }
+
+    long getRows() {
+        return rows;
+    }
+
+    private void writePending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (upsertDialect != null) {
+            upsertDialect.upsertRules(casbinRuleDao, pendingTable, pending);
+            pendingRules.clear();
+        } else if (rowsPerStatement == 1) {
+            casbinRuleDao.insertData(pendingTable, pending.get(0));
+        } else {
+            casbinRuleDao.insertDataBatch(pendingTable, pending);
+        }
+        unflushed += pending.size();
+        rows += pending.size();
+        // The batch executor keeps the parameter until it is flushed, so the list can't be reused.
+        pending = new ArrayList<>(rowsPerStatement);
+        if (unflushed >= batchSize) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        sqlSession.flushStatements();
+        metrics.recordBatch(unflushed);
+        unflushed = 0;
+    }
+}
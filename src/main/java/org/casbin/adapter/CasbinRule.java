@@ -1,6 +1,7 @@
 package org.casbin.adapter;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 public class CasbinRule implements Serializable{
     String ptype;
@@ -80,6 +81,29 @@ public class CasbinRule implements Serializable{
         this.v5 = v5;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CasbinRule that = (CasbinRule) o;
+        return Objects.equals(ptype, that.ptype) &&
+                Objects.equals(v0, that.v0) &&
+                Objects.equals(v1, that.v1) &&
+                Objects.equals(v2, that.v2) &&
+                Objects.equals(v3, that.v3) &&
+                Objects.equals(v4, that.v4) &&
+                Objects.equals(v5, that.v5);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ptype, v0, v1, v2, v3, v4, v5);
+    }
+
     @Override
     public String toString() {
         return "CasbinRule{" +
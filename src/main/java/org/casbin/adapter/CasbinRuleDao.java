@@ -1,15 +1,75 @@
 package org.casbin.adapter;
 
+import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.util.List;
 
 public interface CasbinRuleDao {
-    @Select("select * from casbin_rule")
-    List<CasbinRule> loadAll();
+    @Select({"<script>",
+            "select * from ${table}",
+            "<if test='orderById'>ORDER BY id</if>",
+            "</script>"})
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY)
+    @ResultType(CasbinRule.class)
+    void streamAll(@Param("table") String table, @Param("orderById") boolean orderById, ResultHandler<CasbinRule> handler);
+
+    @Select({"<script>",
+            "select * from ${table}",
+            "<where>",
+            "<if test='filter.ptypes.size() > 0'>",
+            "ptype IN <foreach collection='filter.ptypes' item='ptype' open='(' separator=',' close=')'>#{ptype}</foreach>",
+            "</if>",
+            "<foreach collection='filter.conditions' item='condition'>",
+            "AND <if test='dictionary != null'>${condition.column} IN (SELECT id FROM ${dictionary} WHERE </if>",
+            "<bind name='column' value='dictionary == null ? condition.column : \"val\"'/>",
+            "<choose>",
+            "<when test='condition.prefix'>${column} LIKE #{condition.pattern} ESCAPE '!'</when>",
+            "<otherwise>${column} IN ",
+            "<foreach collection='condition.values' item='value' open='(' separator=',' close=')'>#{value}</foreach>",
+            "</otherwise>",
+            "</choose>",
+            "<if test='dictionary != null'>)</if>",
+            "</foreach>",
+            "</where>",
+            "<if test='orderById'>ORDER BY id</if>",
+            "</script>"
+    })
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY)
+    @ResultType(CasbinRule.class)
+    void streamFiltered(@Param("table") String table, @Param("filter") CasbinRuleFilter filter,
+                        @Param("dictionary") String dictionary, @Param("orderById") boolean orderById,
+                        ResultHandler<CasbinRule> handler);
+
+    @Select("SELECT COUNT(*) FROM ${table}")
+    long countRules(@Param("table") String table);
+
+    @Select("SELECT id FROM ${table} ORDER BY id LIMIT 1 OFFSET #{offset}")
+    Long selectIdAtOffsetLimit(@Param("table") String table, @Param("offset") long offset);
+
+    @Select("SELECT id FROM ${table} ORDER BY id OFFSET #{offset} ROWS FETCH NEXT 1 ROWS ONLY")
+    Long selectIdAtOffsetFetch(@Param("table") String table, @Param("offset") long offset);
+
+    @Select({"<script>",
+            "select * from ${table}",
+            "<where>",
+            "<if test='from != null'>id &gt;= #{from}</if>",
+            "<if test='to != null'>AND id &lt; #{to}</if>",
+            "</where>",
+            "<if test='orderById'>ORDER BY id</if>",
+            "</script>"
+    })
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY)
+    @ResultType(CasbinRule.class)
+    void streamPartition(@Param("table") String table, @Param("from") Long from, @Param("to") Long to,
+                         @Param("orderById") boolean orderById, ResultHandler<CasbinRule> handler);
 
     @Update("CREATE DATABASE IF NOT EXISTS ${databaseName}")
     void createMysqlDatabase(@Param("databaseName") String databaseName);
@@ -23,47 +83,166 @@ public interface CasbinRuleDao {
     void createSqlServerDatabase(@Param("databaseName") String databaseName);
 
     @Update("CREATE TABLE IF NOT EXISTS ${tableName} " +
-            "(ptype VARCHAR(100) not NULL, " +
-            " v0 VARCHAR(100), " +
-            " v1 VARCHAR(100), " +
-            " v2 VARCHAR(100), " +
-            " v3 VARCHAR(100), " +
-            " v4 VARCHAR(100), " +
-            " v5 VARCHAR(100))")
-    void createMysqlTable(@Param("tableName") String tableName);
+            "(id BIGINT NOT NULL AUTO_INCREMENT, " +
+            " ptype VARCHAR(100) not NULL, " +
+            " v0 ${valueType}, " +
+            " v1 ${valueType}, " +
+            " v2 ${valueType}, " +
+            " v3 ${valueType}, " +
+            " v4 ${valueType}, " +
+            " v5 ${valueType}, " +
+            " PRIMARY KEY (id), " +
+            " INDEX idx_${baseName}_ptype_v0 (ptype, v0), " +
+            " INDEX idx_${baseName}_ptype_v1 (ptype, v1), " +
+            " INDEX idx_${baseName}_ptype_v2 (ptype, v2), " +
+            " INDEX idx_${baseName}_rule (ptype, v0, v1, v2, v3, v4, v5))")
+    void createMysqlTable(@Param("tableName") String tableName, @Param("baseName") String baseName, @Param("valueType") String valueType);
 
     @Update("if not exists (select * from sysobjects where id = object_id('${tableName}')) " +
+            "begin " +
             "create table ${tableName} (" +
+            "   id BIGINT IDENTITY(1,1) PRIMARY KEY, " +
             "   ptype VARCHAR(100) not NULL, " +
-            "   v0 VARCHAR(100), " +
-            "   v1 VARCHAR(100), " +
-            "   v2 VARCHAR(100), " +
-            "   v3 VARCHAR(100), " +
-            "   v4 VARCHAR(100), " +
-            "   v5 VARCHAR(100) " +
-            ")")
-    void createSqlServerTable(@Param("tableName") String tableName);
+            "   v0 ${valueType}, " +
+            "   v1 ${valueType}, " +
+            "   v2 ${valueType}, " +
+            "   v3 ${valueType}, " +
+            "   v4 ${valueType}, " +
+            "   v5 ${valueType} " +
+            "); " +
+            "create index idx_${baseName}_ptype_v0 on ${tableName} (ptype, v0); " +
+            "create index idx_${baseName}_ptype_v1 on ${tableName} (ptype, v1); " +
+            "create index idx_${baseName}_ptype_v2 on ${tableName} (ptype, v2); " +
+            "create index idx_${baseName}_rule on ${tableName} (ptype, v0, v1, v2, v3, v4, v5); " +
+            "end")
+    void createSqlServerTable(@Param("tableName") String tableName, @Param("baseName") String baseName, @Param("valueType") String valueType);
 
     @Update("declare " +
             "nCount NUMBER;" +
             "v_sql LONG;" +
             "begin " +
-            "SELECT count(*) into nCount FROM USER_TABLES where table_name = '${tableName}';" +
+            "SELECT count(*) into nCount FROM USER_TABLES where table_name = UPPER('${baseName}');" +
             "IF(nCount <= 0) " +
             "THEN " +
             "v_sql:='" +
             "CREATE TABLE ${tableName} " +
-            "                    (ptype VARCHAR(100) not NULL, " +
-            "                     v0 VARCHAR(100), " +
-            "                     v1 VARCHAR(100), " +
-            "                     v2 VARCHAR(100), " +
-            "                     v3 VARCHAR(100)," +
-            "                     v4 VARCHAR(100)," +
-            "                     v5 VARCHAR(100))';" +
+            "                    (id NUMBER(19) GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+            "                     ptype VARCHAR(100) not NULL, " +
+            "                     v0 ${valueType}, " +
+            "                     v1 ${valueType}, " +
+            "                     v2 ${valueType}, " +
+            "                     v3 ${valueType}," +
+            "                     v4 ${valueType}," +
+            "                     v5 ${valueType})';" +
             "execute immediate v_sql;" +
+            "execute immediate 'CREATE INDEX idx_${baseName}_ptype_v0 ON ${tableName} (ptype, v0)';" +
+            "execute immediate 'CREATE INDEX idx_${baseName}_ptype_v1 ON ${tableName} (ptype, v1)';" +
+            "execute immediate 'CREATE INDEX idx_${baseName}_ptype_v2 ON ${tableName} (ptype, v2)';" +
+            "execute immediate 'CREATE INDEX idx_${baseName}_rule ON ${tableName} (ptype, v0, v1, v2, v3, v4, v5, id)';" +
+            "END IF;" +
+            "end;")
+    void createOracleTable(@Param("tableName") String tableName, @Param("baseName") String baseName, @Param("valueType") String valueType);
+
+    @Update("CREATE TABLE IF NOT EXISTS ${tableName} " +
+            "(id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+            " ptype VARCHAR(100) not NULL, " +
+            " v0 ${valueType}, " +
+            " v1 ${valueType}, " +
+            " v2 ${valueType}, " +
+            " v3 ${valueType}, " +
+            " v4 ${valueType}, " +
+            " v5 ${valueType}); " +
+            "CREATE INDEX IF NOT EXISTS idx_${baseName}_ptype_v0 ON ${tableName} (ptype, v0); " +
+            "CREATE INDEX IF NOT EXISTS idx_${baseName}_ptype_v1 ON ${tableName} (ptype, v1); " +
+            "CREATE INDEX IF NOT EXISTS idx_${baseName}_ptype_v2 ON ${tableName} (ptype, v2); " +
+            "CREATE INDEX IF NOT EXISTS idx_${baseName}_rule ON ${tableName} (ptype, v0, v1, v2, v3, v4, v5)")
+    void createH2Table(@Param("tableName") String tableName, @Param("baseName") String baseName, @Param("valueType") String valueType);
+
+    @Select("SELECT id FROM ${table} WHERE 1 = 0")
+    List<Long> probeIdColumn(@Param("table") String table);
+
+    @Update("ALTER TABLE ${tableName} " +
+            "ADD COLUMN id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY, " +
+            "ADD INDEX idx_${baseName}_rule (ptype, v0, v1, v2, v3, v4, v5)")
+    void addMysqlRuleKeys(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Update("ALTER TABLE ${tableName} ADD id BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY; " +
+            "create index idx_${baseName}_rule on ${tableName} (ptype, v0, v1, v2, v3, v4, v5)")
+    void addSqlServerRuleKeys(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Update("begin " +
+            "execute immediate 'ALTER TABLE ${tableName} ADD (id NUMBER(19) GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY)';" +
+            "execute immediate 'CREATE INDEX idx_${baseName}_rule ON ${tableName} (ptype, v0, v1, v2, v3, v4, v5, id)';" +
+            "end;")
+    void addOracleRuleKeys(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Update("ALTER TABLE ${tableName} ADD COLUMN id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY; " +
+            "CREATE INDEX IF NOT EXISTS idx_${baseName}_rule ON ${tableName} (ptype, v0, v1, v2, v3, v4, v5)")
+    void addH2RuleKeys(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Select("SELECT COUNT(*) FROM information_schema.statistics " +
+            "WHERE table_schema = COALESCE(#{schema}, DATABASE()) AND table_name = #{baseName} AND index_name = #{indexName}")
+    int countMysqlIndexes(@Param("schema") String schema, @Param("baseName") String baseName, @Param("indexName") String indexName);
+
+    @Update("ALTER TABLE ${tableName} " +
+            "ADD COLUMN rule_key CHAR(32) AS (MD5(CONCAT_WS(CHAR(31), ptype, " +
+            "IFNULL(CONCAT('=', v0), '-'), IFNULL(CONCAT('=', v1), '-'), IFNULL(CONCAT('=', v2), '-'), " +
+            "IFNULL(CONCAT('=', v3), '-'), IFNULL(CONCAT('=', v4), '-'), IFNULL(CONCAT('=', v5), '-')))) STORED, " +
+            "ADD UNIQUE INDEX uk_${baseName} (rule_key)")
+    void createMysqlUniqueIndex(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Update("if not exists (select * from sys.indexes where name = 'uk_${baseName}' and object_id = object_id('${tableName}')) " +
+            "create unique index uk_${baseName} on ${tableName} (ptype, v0, v1, v2, v3, v4, v5)")
+    void createSqlServerUniqueIndex(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Update("declare " +
+            "nCount NUMBER;" +
+            "begin " +
+            "SELECT count(*) into nCount FROM USER_INDEXES where index_name = UPPER('uk_${baseName}');" +
+            "IF(nCount <= 0) " +
+            "THEN " +
+            "execute immediate 'CREATE UNIQUE INDEX uk_${baseName} ON ${tableName} (ptype, v0, v1, v2, v3, v4, v5)';" +
+            "END IF;" +
+            "end;")
+    void createOracleUniqueIndex(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Update("CREATE UNIQUE NULLS NOT DISTINCT INDEX IF NOT EXISTS uk_${baseName} ON ${tableName} (ptype, v0, v1, v2, v3, v4, v5)")
+    void createH2UniqueIndex(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Update("CREATE TABLE IF NOT EXISTS ${tableName} " +
+            "(id INT NOT NULL AUTO_INCREMENT, " +
+            " val VARCHAR(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL, " +
+            " PRIMARY KEY (id), " +
+            " UNIQUE INDEX uk_${baseName} (val))")
+    void createMysqlDictionaryTable(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Update("if not exists (select * from sysobjects where id = object_id('${tableName}')) " +
+            "create table ${tableName} (" +
+            "   id INT IDENTITY(1,1) PRIMARY KEY, " +
+            "   val VARCHAR(100) COLLATE Latin1_General_BIN2 not NULL, " +
+            "   CONSTRAINT uk_${baseName} UNIQUE (val) " +
+            ")")
+    void createSqlServerDictionaryTable(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Update("declare " +
+            "nCount NUMBER;" +
+            "begin " +
+            "SELECT count(*) into nCount FROM USER_TABLES where table_name = UPPER('${baseName}');" +
+            "IF(nCount <= 0) " +
+            "THEN " +
+            "execute immediate 'CREATE TABLE ${tableName} " +
+            "                    (id NUMBER(10) GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+            "                     val VARCHAR(100) not NULL, " +
+            "                     CONSTRAINT uk_${baseName} UNIQUE (val))';" +
             "END IF;" +
             "end;")
-    void createOracleTable(@Param("tableName") String tableName);
+    void createOracleDictionaryTable(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Update("CREATE TABLE IF NOT EXISTS ${tableName} " +
+            "(id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+            " val VARCHAR(100) NOT NULL, " +
+            " CONSTRAINT uk_${baseName} UNIQUE (val))")
+    void createH2DictionaryTable(@Param("tableName") String tableName, @Param("baseName") String baseName);
 
     @Update("DROP TABLE IF EXISTS ${tableName}")
     void dropMysqlTable(@Param("tableName") String tableName);
@@ -72,35 +251,308 @@ public interface CasbinRuleDao {
             "nCount NUMBER;" +
             "v_sql LONG;" +
             "begin " +
-            "SELECT count(*) into nCount FROM dba_tables where table_name = '${tableName}';" +
+            "SELECT count(*) into nCount FROM USER_TABLES where table_name = UPPER('${baseName}');" +
             "IF(nCount >= 1) " +
             "THEN " +
             "v_sql:='drop table ${tableName}';" +
             "execute immediate v_sql;" +
             "END IF;" +
             "end;")
-    void dropOracleTable(@Param("tableName") String tableName);
+    void dropOracleTable(@Param("tableName") String tableName, @Param("baseName") String baseName);
 
-    @Update("if exists (select * from sysobjects where id = object_id('${tableName}') drop table ${tableName}")
+    @Update("if exists (select * from sysobjects where id = object_id('${tableName}')) drop table ${tableName}")
     void dropSqlServerTable(@Param("tableName") String tableName);
 
-    @Insert("INSERT INTO casbin_rule (ptype,v0,v1,v2,v3,v4,v5) VALUES (#{ptype},#{v0},#{v1},#{v2},#{v3},#{v4},#{v5})")
-    void insertData(CasbinRule line);
+    @Update({"<script>",
+            "RENAME TABLE ",
+            "<foreach collection='swaps' item='swap' separator=','>",
+            "${swap.table} TO ${swap.oldTable}, ${swap.stagingTable} TO ${swap.table}",
+            "</foreach>",
+            "</script>"
+    })
+    void swapMysqlTables(@Param("swaps") List<TableSwap> swaps);
+
+    @Update("EXEC sp_rename '${tableName}', '${newName}'")
+    void renameSqlServerTable(@Param("tableName") String tableName, @Param("newName") String newName);
+
+    @Update("ALTER TABLE ${tableName} RENAME TO ${newName}")
+    void renameTable(@Param("tableName") String tableName, @Param("newName") String newName);
+
+    @Update("ALTER INDEX ${indexName} RENAME TO ${newName}")
+    void renameIndex(@Param("indexName") String indexName, @Param("newName") String newName);
+
+    @Insert("INSERT INTO ${table} (ptype,v0,v1,v2,v3,v4,v5) VALUES (#{line.ptype},#{line.v0},#{line.v1},#{line.v2},#{line.v3},#{line.v4},#{line.v5})")
+    void insertData(@Param("table") String table, @Param("line") CasbinRule line);
+
+    @Insert({"<script>",
+            "INSERT INTO ${table} (ptype, v0, v1, v2, v3, v4, v5) VALUES ",
+            "<foreach collection='list' item='item' separator=','>",
+            "(#{item.ptype}, #{item.v0}, #{item.v1}, #{item.v2}, #{item.v3}, #{item.v4}, #{item.v5})",
+            "</foreach>",
+            "</script>"
+    })
+    void insertDataBatch(@Param("table") String table, @Param("list") List<CasbinRule> rules);
+
+    @Insert({"<script>",
+            "INSERT INTO ${table} (ptype, v0, v1, v2, v3, v4, v5) VALUES ",
+            "<foreach collection='list' item='item' separator=','>",
+            "(#{item.ptype}, #{item.v0}, #{item.v1}, #{item.v2}, #{item.v3}, #{item.v4}, #{item.v5})",
+            "</foreach>",
+            "ON DUPLICATE KEY UPDATE ptype = ptype",
+            "</script>"
+    })
+    void upsertMysqlBatch(@Param("table") String table, @Param("list") List<CasbinRule> rules);
 
     @Insert({"<script>",
-            "INSERT INTO casbin_rule (ptype, v0, v1, v2, v3, v4, v5) VALUES ",
+            "MERGE INTO ${table} WITH (HOLDLOCK) AS t USING (VALUES ",
             "<foreach collection='list' item='item' separator=','>",
             "(#{item.ptype}, #{item.v0}, #{item.v1}, #{item.v2}, #{item.v3}, #{item.v4}, #{item.v5})",
             "</foreach>",
+            ") AS s (ptype, v0, v1, v2, v3, v4, v5) ON t.ptype = s.ptype",
+            "AND (t.v0 = s.v0 OR t.v0 IS NULL AND s.v0 IS NULL) AND (t.v1 = s.v1 OR t.v1 IS NULL AND s.v1 IS NULL)",
+            "AND (t.v2 = s.v2 OR t.v2 IS NULL AND s.v2 IS NULL) AND (t.v3 = s.v3 OR t.v3 IS NULL AND s.v3 IS NULL)",
+            "AND (t.v4 = s.v4 OR t.v4 IS NULL AND s.v4 IS NULL) AND (t.v5 = s.v5 OR t.v5 IS NULL AND s.v5 IS NULL)",
+            "WHEN NOT MATCHED THEN INSERT (ptype, v0, v1, v2, v3, v4, v5) VALUES (s.ptype, s.v0, s.v1, s.v2, s.v3, s.v4, s.v5);",
+            "</script>"
+    })
+    void mergeSqlServerBatch(@Param("table") String table, @Param("list") List<CasbinRule> rules);
+
+    @Insert("MERGE INTO ${table} t USING (SELECT #{line.ptype,jdbcType=VARCHAR} ptype, #{line.v0,jdbcType=VARCHAR} v0, " +
+            "#{line.v1,jdbcType=VARCHAR} v1, #{line.v2,jdbcType=VARCHAR} v2, #{line.v3,jdbcType=VARCHAR} v3, " +
+            "#{line.v4,jdbcType=VARCHAR} v4, #{line.v5,jdbcType=VARCHAR} v5 FROM dual) s " +
+            "ON (t.ptype = s.ptype AND DECODE(t.v0, s.v0, 1, 0) = 1 AND DECODE(t.v1, s.v1, 1, 0) = 1 AND DECODE(t.v2, s.v2, 1, 0) = 1 " +
+            "AND DECODE(t.v3, s.v3, 1, 0) = 1 AND DECODE(t.v4, s.v4, 1, 0) = 1 AND DECODE(t.v5, s.v5, 1, 0) = 1) " +
+            "WHEN NOT MATCHED THEN INSERT (ptype, v0, v1, v2, v3, v4, v5) VALUES (s.ptype, s.v0, s.v1, s.v2, s.v3, s.v4, s.v5)")
+    void mergeOracle(@Param("table") String table, @Param("line") CasbinRule line);
+
+    @Insert({"<script>",
+            "MERGE INTO ${table} AS t USING (VALUES ",
+            "<foreach collection='list' item='item' separator=','>",
+            "(CAST(#{item.ptype} AS VARCHAR(100)), CAST(#{item.v0} AS VARCHAR(100)), CAST(#{item.v1} AS VARCHAR(100)), ",
+            "CAST(#{item.v2} AS VARCHAR(100)), CAST(#{item.v3} AS VARCHAR(100)), CAST(#{item.v4} AS VARCHAR(100)), ",
+            "CAST(#{item.v5} AS VARCHAR(100)))",
+            "</foreach>",
+            ") AS s (ptype, v0, v1, v2, v3, v4, v5) ON t.ptype = s.ptype",
+            "AND t.v0 IS NOT DISTINCT FROM s.v0 AND t.v1 IS NOT DISTINCT FROM s.v1 AND t.v2 IS NOT DISTINCT FROM s.v2",
+            "AND t.v3 IS NOT DISTINCT FROM s.v3 AND t.v4 IS NOT DISTINCT FROM s.v4 AND t.v5 IS NOT DISTINCT FROM s.v5",
+            "WHEN NOT MATCHED THEN INSERT (ptype, v0, v1, v2, v3, v4, v5) VALUES (s.ptype, s.v0, s.v1, s.v2, s.v3, s.v4, s.v5)",
+            "</script>"
+    })
+    void mergeH2Batch(@Param("table") String table, @Param("list") List<CasbinRule> rules);
+
+    @Select("SELECT id, val FROM ${table} WHERE id > #{sinceId}")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY)
+    @ResultType(DictionaryEntry.class)
+    void streamDictionary(@Param("table") String table, @Param("sinceId") long sinceId, ResultHandler<DictionaryEntry> handler);
+
+    @Select({"<script>",
+            "SELECT id, val FROM ${table} WHERE val IN ",
+            "<foreach collection='values' item='value' open='(' separator=',' close=')'>#{value}</foreach>",
+            "</script>"
+    })
+    List<DictionaryEntry> selectDictionaryEntries(@Param("table") String table, @Param("values") List<String> values);
+
+    @Insert("INSERT INTO ${table} (val) VALUES (#{value})")
+    void insertDictionaryValue(@Param("table") String table, @Param("value") String value);
+
+    @Insert({"<script>",
+            "INSERT INTO ${table} (val) VALUES ",
+            "<foreach collection='values' item='value' separator=','>(#{value})</foreach>",
+            "</script>"
+    })
+    void insertDictionaryValues(@Param("table") String table, @Param("values") List<String> values);
+
+    @Update({"<script>",
+            "UPDATE ${table} SET v0 = #{newLine.v0}, v1 = #{newLine.v1}, v2 = #{newLine.v2},",
+            "v3 = #{newLine.v3}, v4 = #{newLine.v4}, v5 = #{newLine.v5}",
+            "WHERE ptype = #{oldLine.ptype}",
+            "<choose><when test='oldLine.v0 == null'>AND v0 IS NULL</when><otherwise>AND v0 = #{oldLine.v0}</otherwise></choose>",
+            "<choose><when test='oldLine.v1 == null'>AND v1 IS NULL</when><otherwise>AND v1 = #{oldLine.v1}</otherwise></choose>",
+            "<choose><when test='oldLine.v2 == null'>AND v2 IS NULL</when><otherwise>AND v2 = #{oldLine.v2}</otherwise></choose>",
+            "<choose><when test='oldLine.v3 == null'>AND v3 IS NULL</when><otherwise>AND v3 = #{oldLine.v3}</otherwise></choose>",
+            "<choose><when test='oldLine.v4 == null'>AND v4 IS NULL</when><otherwise>AND v4 = #{oldLine.v4}</otherwise></choose>",
+            "<choose><when test='oldLine.v5 == null'>AND v5 IS NULL</when><otherwise>AND v5 = #{oldLine.v5}</otherwise></choose>",
+            "</script>"
+    })
+    int updateData(@Param("table") String table, @Param("oldLine") CasbinRule oldLine, @Param("newLine") CasbinRule newLine);
+
+    @Delete("DELETE FROM ${table}")
+    void deleteAll(@Param("table") String table);
+
+    @Delete({"<script>",
+            "DELETE FROM ${table} WHERE ptype = #{line.ptype}",
+            "<choose><when test='line.v0 == null'>AND v0 IS NULL</when><otherwise>AND v0 = #{line.v0}</otherwise></choose>",
+            "<choose><when test='line.v1 == null'>AND v1 IS NULL</when><otherwise>AND v1 = #{line.v1}</otherwise></choose>",
+            "<choose><when test='line.v2 == null'>AND v2 IS NULL</when><otherwise>AND v2 = #{line.v2}</otherwise></choose>",
+            "<choose><when test='line.v3 == null'>AND v3 IS NULL</when><otherwise>AND v3 = #{line.v3}</otherwise></choose>",
+            "<choose><when test='line.v4 == null'>AND v4 IS NULL</when><otherwise>AND v4 = #{line.v4}</otherwise></choose>",
+            "<choose><when test='line.v5 == null'>AND v5 IS NULL</when><otherwise>AND v5 = #{line.v5}</otherwise></choose>",
+            "</script>"
+    })
+    int deleteExactData(@Param("table") String table, @Param("line") CasbinRule line);
+
+    @Delete({"<script>",
+            "DELETE FROM ${table} WHERE ptype = #{line.ptype}",
+            "<if test='line.v0 != null'>AND v0 = #{line.v0}</if>",
+            "<if test='line.v1 != null'>AND v1 = #{line.v1}</if>",
+            "<if test='line.v2 != null'>AND v2 = #{line.v2}</if>",
+            "<if test='line.v3 != null'>AND v3 = #{line.v3}</if>",
+            "<if test='line.v4 != null'>AND v4 = #{line.v4}</if>",
+            "<if test='line.v5 != null'>AND v5 = #{line.v5}</if>",
             "</script>"
     })
-    void insertDataBatch(@Param("list") List<CasbinRule> rules);
-
-    @Insert("<script>"  +
-            "DELETE FROM casbin_rule WHERE ptype = #{ptype}" +
-            "<foreach collection=\"list\" item=\"item1\" index=\"index\"  separator=\" \">" +
-            " AND v#{index} = #{item1}" +
-            "</foreach>" +
-            "</script>")
-    void deleteData(@Param("ptype") String ptype, @Param("list") List<String> rules);
+    int deleteMatchedData(@Param("table") String table, @Param("line") CasbinRule line);
+
+    @Update("CREATE TABLE IF NOT EXISTS ${tableName} " +
+            "(revision BIGINT NOT NULL AUTO_INCREMENT, " +
+            " op CHAR(1) NOT NULL, " +
+            " field_index INT NOT NULL, " +
+            " ptype VARCHAR(100), " +
+            " v0 VARCHAR(100), " +
+            " v1 VARCHAR(100), " +
+            " v2 VARCHAR(100), " +
+            " v3 VARCHAR(100), " +
+            " v4 VARCHAR(100), " +
+            " v5 VARCHAR(100), " +
+            " PRIMARY KEY (revision))")
+    void createMysqlChangeLogTable(@Param("tableName") String tableName);
+
+    @Update("if not exists (select * from sysobjects where id = object_id('${tableName}')) " +
+            "create table ${tableName} (" +
+            "   revision BIGINT IDENTITY(1,1) PRIMARY KEY, " +
+            "   op CHAR(1) not NULL, " +
+            "   field_index INT not NULL, " +
+            "   ptype VARCHAR(100), " +
+            "   v0 VARCHAR(100), " +
+            "   v1 VARCHAR(100), " +
+            "   v2 VARCHAR(100), " +
+            "   v3 VARCHAR(100), " +
+            "   v4 VARCHAR(100), " +
+            "   v5 VARCHAR(100) " +
+            ")")
+    void createSqlServerChangeLogTable(@Param("tableName") String tableName);
+
+    @Update("declare " +
+            "nCount NUMBER;" +
+            "begin " +
+            "SELECT count(*) into nCount FROM USER_TABLES where table_name = UPPER('${baseName}');" +
+            "IF(nCount <= 0) " +
+            "THEN " +
+            "execute immediate 'CREATE TABLE ${tableName} " +
+            "                    (revision NUMBER(19) GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+            "                     op CHAR(1) not NULL, " +
+            "                     field_index NUMBER(10) not NULL, " +
+            "                     ptype VARCHAR(100), " +
+            "                     v0 VARCHAR(100), " +
+            "                     v1 VARCHAR(100), " +
+            "                     v2 VARCHAR(100), " +
+            "                     v3 VARCHAR(100)," +
+            "                     v4 VARCHAR(100)," +
+            "                     v5 VARCHAR(100))';" +
+            "END IF;" +
+            "end;")
+    void createOracleChangeLogTable(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Update("CREATE TABLE IF NOT EXISTS ${tableName} " +
+            "(revision BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+            " op CHAR(1) NOT NULL, " +
+            " field_index INT NOT NULL, " +
+            " ptype VARCHAR(100), " +
+            " v0 VARCHAR(100), " +
+            " v1 VARCHAR(100), " +
+            " v2 VARCHAR(100), " +
+            " v3 VARCHAR(100), " +
+            " v4 VARCHAR(100), " +
+            " v5 VARCHAR(100))")
+    void createH2ChangeLogTable(@Param("tableName") String tableName);
+
+    @Insert("INSERT INTO ${table} (op, field_index, ptype, v0, v1, v2, v3, v4, v5) " +
+            "VALUES (#{op}, #{fieldIndex}, #{line.ptype}, #{line.v0}, #{line.v1}, #{line.v2}, #{line.v3}, #{line.v4}, #{line.v5})")
+    void insertLog(@Param("table") String table, @Param("op") String op, @Param("fieldIndex") int fieldIndex, @Param("line") CasbinRule line);
+
+    @Select("SELECT revision, op, field_index AS fieldIndex, ptype, v0, v1, v2, v3, v4, v5 " +
+            "FROM ${table} WHERE revision > #{sinceRevision} ORDER BY revision")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY)
+    @ResultType(CasbinRuleLog.class)
+    void streamLog(@Param("table") String table, @Param("sinceRevision") long sinceRevision, ResultHandler<CasbinRuleLog> handler);
+
+    @Select("SELECT COALESCE(MAX(revision), 0) FROM ${table}")
+    long selectMaxRevision(@Param("table") String table);
+
+    @Delete("DELETE FROM ${table} WHERE revision <= #{revision}")
+    int deleteLogUpTo(@Param("table") String table, @Param("revision") long revision);
+
+    @Update("CREATE TABLE IF NOT EXISTS ${tableName} " +
+            "(id INT NOT NULL PRIMARY KEY, " +
+            " revision BIGINT NOT NULL)")
+    void createMysqlRevisionTable(@Param("tableName") String tableName);
+
+    @Update("if not exists (select * from sysobjects where id = object_id('${tableName}')) " +
+            "create table ${tableName} (" +
+            "   id INT not NULL PRIMARY KEY, " +
+            "   revision BIGINT not NULL " +
+            ")")
+    void createSqlServerRevisionTable(@Param("tableName") String tableName);
+
+    @Update("declare " +
+            "nCount NUMBER;" +
+            "begin " +
+            "SELECT count(*) into nCount FROM USER_TABLES where table_name = UPPER('${baseName}');" +
+            "IF(nCount <= 0) " +
+            "THEN " +
+            "execute immediate 'CREATE TABLE ${tableName} " +
+            "                    (id NUMBER(10) not NULL PRIMARY KEY, " +
+            "                     revision NUMBER(19) not NULL)';" +
+            "END IF;" +
+            "end;")
+    void createOracleRevisionTable(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Select("SELECT COUNT(*) FROM ${table}")
+    int countRevisions(@Param("table") String table);
+
+    @Insert("INSERT INTO ${table} (id, revision) VALUES (1, 0)")
+    void insertRevision(@Param("table") String table);
+
+    @Select("SELECT revision FROM ${table} WHERE id = 1")
+    long selectRevision(@Param("table") String table);
+
+    @Update("UPDATE ${table} SET revision = revision + 1 WHERE id = 1")
+    void incrementRevision(@Param("table") String table);
+
+    @Update("CREATE TABLE IF NOT EXISTS ${tableName} " +
+            "(table_name VARCHAR(255) NOT NULL PRIMARY KEY, " +
+            " version INT NOT NULL)")
+    void createMysqlSchemaTable(@Param("tableName") String tableName);
+
+    @Update("if not exists (select * from sysobjects where id = object_id('${tableName}')) " +
+            "create table ${tableName} (" +
+            "   table_name VARCHAR(255) not NULL PRIMARY KEY, " +
+            "   version INT not NULL " +
+            ")")
+    void createSqlServerSchemaTable(@Param("tableName") String tableName);
+
+    @Update("declare " +
+            "nCount NUMBER;" +
+            "begin " +
+            "SELECT count(*) into nCount FROM USER_TABLES where table_name = UPPER('${baseName}');" +
+            "IF(nCount <= 0) " +
+            "THEN " +
+            "execute immediate 'CREATE TABLE ${tableName} " +
+            "                    (table_name VARCHAR(255) not NULL PRIMARY KEY, " +
+            "                     version NUMBER(10) not NULL)';" +
+            "END IF;" +
+            "end;")
+    void createOracleSchemaTable(@Param("tableName") String tableName, @Param("baseName") String baseName);
+
+    @Select("SELECT table_name AS tableName, version FROM ${table}")
+    List<SchemaVersion> selectSchemaVersions(@Param("table") String table);
+
+    @Update("UPDATE ${table} SET version = #{version} WHERE table_name = #{tableName}")
+    int updateSchemaVersion(@Param("table") String table, @Param("tableName") String tableName, @Param("version") int version);
+
+    @Insert("INSERT INTO ${table} (table_name, version) VALUES (#{tableName}, #{version})")
+    void insertSchemaVersion(@Param("table") String table, @Param("tableName") String tableName, @Param("version") int version);
+
+    @Delete("DELETE FROM ${table} WHERE table_name = #{tableName}")
+    void deleteSchemaVersion(@Param("table") String table, @Param("tableName") String tableName);
 }
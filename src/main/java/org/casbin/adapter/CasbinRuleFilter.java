@@ -0,0 +1,111 @@
+package org.casbin.adapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * CasbinRuleFilter is the filter for MybatisAdapter.loadFilteredPolicy().
+ * It is translated into a WHERE clause, so only the matching rows are read from the storage.
+ *
+ * <pre>
+ * CasbinRuleFilter filter = new CasbinRuleFilter()
+ *         .ptype("p", "g")
+ *         .field(1, "domain1")
+ *         .fieldPrefix(0, "data2_");
+ * enforcer.loadFilteredPolicy(filter);
+ * </pre>
+ */
+public class CasbinRuleFilter {
+    private static final int MAX_FIELD_INDEX = 5;
+
+    private final List<String> ptypes = new ArrayList<>();
+    private final List<Condition> conditions = new ArrayList<>();
+
+    /**
+     * ptype restricts the filter to the given policy types, like "p", "p2", "g".
+     *
+     * @param ptypes the policy types.
+     * @return this filter.
+     */
+    public CasbinRuleFilter ptype(String... ptypes) {
+        this.ptypes.addAll(Arrays.asList(ptypes));
+        return this;
+    }
+
+    /**
+     * field matches the rules whose field at fieldIndex (v0..v5) equals one of the values.
+     *
+     * @param fieldIndex the index of the field, from 0 to 5.
+     * @param values the accepted values.
+     * @return this filter.
+     */
+    public CasbinRuleFilter field(int fieldIndex, String... values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("At least one value is required for field v" + fieldIndex);
+        }
+        conditions.add(new Condition(column(fieldIndex), Arrays.asList(values), null));
+        return this;
+    }
+
+    /**
+     * fieldPrefix matches the rules whose field at fieldIndex (v0..v5) starts with the prefix.
+     *
+     * @param fieldIndex the index of the field, from 0 to 5.
+     * @param prefix the prefix.
+     * @return this filter.
+     */
+    public CasbinRuleFilter fieldPrefix(int fieldIndex, String prefix) {
+        String pattern = prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+        conditions.add(new Condition(column(fieldIndex), Collections.<String>emptyList(), pattern));
+        return this;
+    }
+
+    public List<String> getPtypes() {
+        return ptypes;
+    }
+
+    public List<Condition> getConditions() {
+        return conditions;
+    }
+
+    private static String column(int fieldIndex) {
+        if (fieldIndex < 0 || fieldIndex > MAX_FIELD_INDEX) {
+            throw new IllegalArgumentException("Field index must be between 0 and " + MAX_FIELD_INDEX + ": " + fieldIndex);
+        }
+        return "v" + fieldIndex;
+    }
+
+    /**
+     * Condition is a single column condition of the filter.
+     * Its column is always one of v0..v5, so it is safe to be inlined into the SQL.
+     */
+    public static class Condition {
+        private final String column;
+        private final List<String> values;
+        private final String pattern;
+
+        Condition(String column, List<String> values, String pattern) {
+            this.column = column;
+            this.values = values;
+            this.pattern = pattern;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public List<String> getValues() {
+            return values;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public boolean isPrefix() {
+            return pattern != null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.casbin.adapter;
+
+/**
+ * ConnectionPoolStatisticsMXBean is the JMX view of the connection pool built by the adapter,
+ * registered by JmxAdapterMetrics.
+ */
+public interface ConnectionPoolStatisticsMXBean {
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    long getRequestCount();
+
+    long getHadToWaitCount();
+
+    long getAverageWaitTimeMillis();
+
+    long getAverageCheckoutTimeMillis();
+
+    long getClaimedOverdueConnectionCount();
+
+    long getBadConnectionCount();
+}
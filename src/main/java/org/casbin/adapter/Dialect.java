@@ -0,0 +1,199 @@
+package org.casbin.adapter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Dialect holds what differs between the databases supported by the adapter:
+ * the DDL of its tables, paging, statement limits and the native bulk import used by bulk saves.
+ * The dialect is chosen from the JDBC driver, and can be replaced with MybatisAdapterBuilder.dialect().
+ *
+ * The default methods are the behavior for other databases: tables are expected to exist already,
+ * rows are inserted with JDBC batches and tables are renamed with ALTER TABLE .. RENAME TO.
+ */
+public interface Dialect {
+    /**
+     * GENERIC is the dialect used for unknown drivers.
+     */
+    Dialect GENERIC = new Dialect() {
+    };
+
+    /**
+     * forDriver returns the dialect of a JDBC driver.
+     *
+     * @param driver the driver class name, like "com.mysql.cj.jdbc.Driver".
+     * @return the dialect, GENERIC if the driver is unknown.
+     */
+    static Dialect forDriver(String driver) {
+        if (driver == null) {
+            return GENERIC;
+        }
+        switch (driver) {
+            case "com.mysql.cj.jdbc.Driver":
+                return new MysqlDialect();
+            case "com.microsoft.sqlserver.jdbc.SQLServerDriver":
+                return new SqlServerDialect();
+            case "oracle.jdbc.OracleDriver":
+                return new OracleDialect();
+            case "org.h2.Driver":
+                return new H2Dialect();
+            default:
+                return GENERIC;
+        }
+    }
+
+    default void createDatabase(CasbinRuleDao casbinRuleDao, String databaseName) {
+    }
+
+    default void createTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+    }
+
+    /**
+     * createIdTable creates a rule table of the dictionary storage, in which v0..v5 are integer ids of casbin_rule_dict.
+     */
+    default void createIdTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+    }
+
+    /**
+     * createDictionaryTable creates the dictionary of the rule values, in which values are compared case-sensitively.
+     */
+    default void createDictionaryTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+    }
+
+    default void createChangeLogTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+    }
+
+    default void createRevisionTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+    }
+
+    /**
+     * createSchemaTable creates the table recording the version of the other tables, see SchemaMode.
+     * Without it, as with the default, the adapter runs the idempotent DDL of its tables on every start.
+     */
+    default void createSchemaTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+    }
+
+    /**
+     * addRuleKeys migrates a rule table created before version 2 of its schema: it adds the id primary key,
+     * filled for the stored rows, and the idx_ index over (ptype, v0..v5) followed by _rule.
+     */
+    default void addRuleKeys(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+    }
+
+    default void dropTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.dropMysqlTable(tableName);
+    }
+
+    /**
+     * createUniqueIndex adds the unique index over (ptype, v0..v5) that lets upsertRules() skip stored rules.
+     * It does nothing if the table has the index already, and fails if the table holds duplicate rules.
+     * The default does nothing, so rules are only deduplicated by the adapter.
+     */
+    default void createUniqueIndex(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+    }
+
+    /**
+     * upsertRules inserts the rules that are not stored yet and skips the others, in one statement
+     * where the database allows it. The rules must be distinct. The default inserts all of them.
+     */
+    default void upsertRules(CasbinRuleDao casbinRuleDao, String tableName, List<CasbinRule> rules) {
+        if (rules.size() == 1) {
+            casbinRuleDao.insertData(tableName, rules.get(0));
+        } else {
+            casbinRuleDao.insertDataBatch(tableName, rules);
+        }
+    }
+
+    /**
+     * isRetryable returns whether the error means the database rolled back the transaction to break a deadlock,
+     * or a lock wait or serialization conflict, so running the transaction again may succeed.
+     * The default checks the SQLSTATE 40001 of serialization failures, which SQL Server also uses for deadlock victims.
+     */
+    default boolean isRetryable(SQLException e) {
+        return "40001".equals(e.getSQLState());
+    }
+
+    /**
+     * selectIdAtOffset returns the id of the rule at the offset in the rules of the table ordered by id.
+     */
+    default Long selectIdAtOffset(CasbinRuleDao casbinRuleDao, String tableName, long offset) {
+        return casbinRuleDao.selectIdAtOffsetLimit(tableName, offset);
+    }
+
+    /**
+     * getMaxRowsPerStatement returns how many rows a multi-row INSERT statement may write.
+     */
+    default int getMaxRowsPerStatement() {
+        return 1000;
+    }
+
+    /**
+     * configureBulkLoad adds the driver properties the bulk import needs to the connection pool built by the adapter.
+     */
+    default void configureBulkLoad(Properties driverProperties) {
+    }
+
+    /**
+     * bulkInsert writes the rules to the table with the fastest import of the database.
+     *
+     * @param connection the connection, in auto-commit mode.
+     * @param tableName the table, an empty staging table.
+     * @param rules the rules.
+     * @param batchSize the number of rows per round trip, where the import is batched.
+     * @return the number of rows written.
+     */
+    default long bulkInsert(Connection connection, String tableName, Iterator<CasbinRule> rules, int batchSize) throws SQLException {
+        long rows = 0;
+        int pending = 0;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO " + tableName + " (ptype, v0, v1, v2, v3, v4, v5) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            while (rules.hasNext()) {
+                CasbinRule line = rules.next();
+                statement.setString(1, line.getPtype());
+                statement.setString(2, line.getV0());
+                statement.setString(3, line.getV1());
+                statement.setString(4, line.getV2());
+                statement.setString(5, line.getV3());
+                statement.setString(6, line.getV4());
+                statement.setString(7, line.getV5());
+                statement.addBatch();
+                rows++;
+                if (++pending == batchSize) {
+                    statement.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                statement.executeBatch();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * replaceTables replaces each table by its staging table and drops the old tables.
+     * It runs in a transaction committed afterwards, so the swap is atomic on databases with
+     * transactional DDL. The default renames the tables one after the other, then renames the
+     * indexes of the staging tables, since index names are unique per schema on most databases.
+     */
+    default void replaceTables(CasbinRuleDao casbinRuleDao, List<TableSwap> swaps) {
+        for (TableSwap swap : swaps) {
+            casbinRuleDao.renameTable(swap.getTable(), swap.getOldBaseName());
+            casbinRuleDao.renameTable(swap.getStagingTable(), swap.getBaseName());
+        }
+        for (TableSwap swap : swaps) {
+            dropTable(casbinRuleDao, swap.getOldTable(), swap.getOldBaseName());
+            for (String index : new String[]{"ptype_v0", "ptype_v1", "ptype_v2", "rule"}) {
+                casbinRuleDao.renameIndex(swap.qualify("idx_" + swap.getStagingBaseName() + "_" + index),
+                        "idx_" + swap.getBaseName() + "_" + index);
+            }
+            if (swap.hasUniqueIndex()) {
+                casbinRuleDao.renameIndex(swap.qualify("uk_" + swap.getStagingBaseName()), "uk_" + swap.getBaseName());
+            }
+        }
+    }
+}
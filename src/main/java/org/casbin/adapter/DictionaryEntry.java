@@ -0,0 +1,26 @@
+package org.casbin.adapter;
+
+/**
+ * DictionaryEntry is an entry of the casbin_rule_dict table of the dictionary storage,
+ * a rule value and the id stored in the rule tables instead of it.
+ */
+public class DictionaryEntry {
+    int id;
+    String val;
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getVal() {
+        return val;
+    }
+
+    public void setVal(String val) {
+        this.val = val;
+    }
+}
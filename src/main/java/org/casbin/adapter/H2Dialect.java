@@ -0,0 +1,113 @@
+package org.casbin.adapter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * H2Dialect is the dialect of H2, mostly used for local testing.
+ * Bulk saves write the rules to a temporary CSV file and import it with CSVREAD,
+ * so the database must be embedded or run on the same host as the adapter.
+ */
+class H2Dialect implements Dialect {
+    @Override
+    public void createTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createH2Table(tableName, baseName, "VARCHAR(100)");
+    }
+
+    @Override
+    public void createIdTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createH2Table(tableName, baseName, "INT");
+    }
+
+    @Override
+    public void createDictionaryTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createH2DictionaryTable(tableName, baseName);
+    }
+
+    @Override
+    public void createChangeLogTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createH2ChangeLogTable(tableName);
+    }
+
+    @Override
+    public void createRevisionTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createMysqlRevisionTable(tableName);
+    }
+
+    @Override
+    public void createSchemaTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createMysqlSchemaTable(tableName);
+    }
+
+    @Override
+    public void addRuleKeys(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.addH2RuleKeys(tableName, baseName);
+    }
+
+    /**
+     * isRetryable also retries lock timeouts (50200), as H2 reports some deadlocks that way.
+     */
+    @Override
+    public boolean isRetryable(SQLException e) {
+        return e.getErrorCode() == 50200 || Dialect.super.isRetryable(e);
+    }
+
+    @Override
+    public void createUniqueIndex(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createH2UniqueIndex(tableName, baseName);
+    }
+
+    @Override
+    public void upsertRules(CasbinRuleDao casbinRuleDao, String tableName, List<CasbinRule> rules) {
+        casbinRuleDao.mergeH2Batch(tableName, rules);
+    }
+
+    @Override
+    public long bulkInsert(Connection connection, String tableName, Iterator<CasbinRule> rules, int batchSize) throws SQLException {
+        Path file = null;
+        try {
+            file = Files.createTempFile("casbin_rule", ".csv");
+            Files.copy(new RuleLineStream(rules, H2Dialect::appendLine), file, StandardCopyOption.REPLACE_EXISTING);
+            try (Statement statement = connection.createStatement()) {
+                return statement.executeUpdate("INSERT INTO " + tableName + " (ptype, v0, v1, v2, v3, v4, v5) " +
+                        "SELECT * FROM CSVREAD('" + file.toAbsolutePath().toString().replace("'", "''") + "', " +
+                        "'PTYPE,V0,V1,V2,V3,V4,V5', 'charset=UTF-8 fieldSeparator=,')");
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to write the CSV file of the rules", e);
+        } finally {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                    // It is in the temporary directory anyway.
+                }
+            }
+        }
+    }
+
+    /**
+     * appendLine writes a CSV line in which values are quoted and a null is an empty unquoted field.
+     */
+    private static void appendLine(StringBuilder out, CasbinRule line) {
+        appendValue(out, line.getPtype());
+        for (String value : new String[]{line.getV0(), line.getV1(), line.getV2(), line.getV3(), line.getV4(), line.getV5()}) {
+            out.append(',');
+            appendValue(out, value);
+        }
+        out.append('\n');
+    }
+
+    private static void appendValue(StringBuilder out, String value) {
+        if (value != null) {
+            out.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+    }
+}
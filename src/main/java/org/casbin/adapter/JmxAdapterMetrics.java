@@ -0,0 +1,186 @@
+package org.casbin.adapter;
+
+import org.apache.ibatis.datasource.pooled.PoolState;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.casbin.jcasbin.exception.CasbinAdapterException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * JmxAdapterMetrics publishes the adapter metrics as MXBeans, without any extra dependency.
+ * Every operation gets a bean named "org.casbin.adapter:type=MybatisAdapter,name=NAME,operation=OPERATION",
+ * plus "operation=session" for the session hold time and "type=ConnectionPool,name=NAME" for the pool.
+ *
+ * <pre>
+ * MybatisAdapter a = MybatisAdapter.builder()
+ *         .jdbc(driver, url, username, password)
+ *         .metrics(new JmxAdapterMetrics("casbin"))
+ *         .build();
+ * </pre>
+ */
+public class JmxAdapterMetrics implements AdapterMetrics, AutoCloseable {
+    private static final String SESSION = "session";
+    private static final String BATCH = "batch";
+
+    private final MBeanServer server;
+    private final String name;
+    private final Map<String, OperationStatistics> operations = new ConcurrentHashMap<>();
+    private final List<ObjectName> registered = new CopyOnWriteArrayList<>();
+
+    /**
+     * JmxAdapterMetrics is the constructor for JmxAdapterMetrics, using the platform MBeanServer.
+     *
+     * @param name the name to tell adapters apart, like "casbin".
+     */
+    public JmxAdapterMetrics(String name) {
+        this(ManagementFactory.getPlatformMBeanServer(), name);
+    }
+
+    /**
+     * JmxAdapterMetrics is the constructor for JmxAdapterMetrics.
+     *
+     * @param server the MBeanServer to register the beans to.
+     * @param name the name to tell adapters apart, like "casbin".
+     */
+    public JmxAdapterMetrics(MBeanServer server, String name) {
+        this.server = server;
+        this.name = ObjectName.quote(name);
+    }
+
+    @Override
+    public void recordOperation(String operation, long durationNanos, boolean failed) {
+        statistics(operation).record(durationNanos, failed);
+    }
+
+    @Override
+    public void recordRows(String operation, long rows) {
+        statistics(operation).addRows(rows);
+    }
+
+    @Override
+    public void recordInterning(String operation, long values, long distinctValues, long bytesSaved) {
+        statistics(operation).setInterning(distinctValues, bytesSaved);
+    }
+
+    @Override
+    public void recordBatch(int rows) {
+        OperationStatistics batch = statistics(BATCH);
+        batch.record(0, false);
+        batch.addRows(rows);
+    }
+
+    @Override
+    public void recordSession(long durationNanos) {
+        statistics(SESSION).record(durationNanos, false);
+    }
+
+    @Override
+    public void bindConnectionPool(PooledDataSource pool) {
+        register("org.casbin.adapter:type=ConnectionPool,name=" + name, new ConnectionPoolStatistics(pool.getPoolState()));
+    }
+
+    /**
+     * getStatistics returns the statistics of an operation, or null if it has not been recorded yet.
+     *
+     * @param operation the operation name, like "loadPolicy".
+     * @return the statistics.
+     */
+    public OperationStatisticsMXBean getStatistics(String operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * close unregisters all beans registered by this instance.
+     */
+    @Override
+    public void close() {
+        for (ObjectName objectName : registered) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException ignored) {
+                // Already unregistered.
+            }
+        }
+        registered.clear();
+    }
+
+    private OperationStatistics statistics(String operation) {
+        OperationStatistics statistics = operations.get(operation);
+        if (statistics != null) {
+            return statistics;
+        }
+        return operations.computeIfAbsent(operation, key -> {
+            OperationStatistics created = new OperationStatistics();
+            register("org.casbin.adapter:type=MybatisAdapter,name=" + name + ",operation=" + key, created);
+            return created;
+        });
+    }
+
+    private void register(String objectName, Object bean) {
+        try {
+            ObjectName on = new ObjectName(objectName);
+            if (server.isRegistered(on)) {
+                server.unregisterMBean(on);
+            }
+            server.registerMBean(bean, on);
+            registered.add(on);
+        } catch (JMException e) {
+            throw new CasbinAdapterException("Failed to register " + objectName, e);
+        }
+    }
+
+    private static class ConnectionPoolStatistics implements ConnectionPoolStatisticsMXBean {
+        private final PoolState state;
+
+        ConnectionPoolStatistics(PoolState state) {
+            this.state = state;
+        }
+
+        @Override
+        public int getActiveConnections() {
+            return state.getActiveConnectionCount();
+        }
+
+        @Override
+        public int getIdleConnections() {
+            return state.getIdleConnectionCount();
+        }
+
+        @Override
+        public long getRequestCount() {
+            return state.getRequestCount();
+        }
+
+        @Override
+        public long getHadToWaitCount() {
+            return state.getHadToWaitCount();
+        }
+
+        @Override
+        public long getAverageWaitTimeMillis() {
+            return state.getAverageWaitTime();
+        }
+
+        @Override
+        public long getAverageCheckoutTimeMillis() {
+            return state.getAverageCheckoutTime();
+        }
+
+        @Override
+        public long getClaimedOverdueConnectionCount() {
+            return state.getClaimedOverdueConnectionCount();
+        }
+
+        @Override
+        public long getBadConnectionCount() {
+            return state.getBadConnectionCount();
+        }
+    }
+}
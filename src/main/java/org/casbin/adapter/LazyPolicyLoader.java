@@ -0,0 +1,418 @@
+package org.casbin.adapter;
+
+import org.casbin.jcasbin.main.Enforcer;
+import org.casbin.jcasbin.model.Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * LazyPolicyLoader loads the policy of an enforcer on demand, for policies too large to be held in memory.
+ * The first enforce() of a subject reads its p and g rules, and those of its roles, with indexed queries on
+ * v0: one query per level of the role hierarchy, for all the roles of that level. When the model holds more
+ * than maxRules rules, the rules of the subjects that have not been enforced for the longest time are removed.
+ * The rules of the other role types, like g2, don't belong to a subject and are loaded at once.
+ *
+ * <pre>
+ * Enforcer e = new Enforcer("examples/rbac_model.conf");
+ * e.setAdapter(adapter);
+ * LazyPolicyLoader loader = new LazyPolicyLoader(adapter, e, 100000);
+ * loader.enforce("alice", "data1", "read");
+ * </pre>
+ *
+ * Rules of the subjects already loaded are not read again, so changes made by other nodes are only seen
+ * after invalidateAll(), like from the callback of a MybatisWatcher.
+ */
+public class LazyPolicyLoader {
+    // Within the 1000 IN values of Oracle.
+    private static final int VALUES_PER_QUERY = 500;
+    private static final String ROLE_TYPE = "g";
+    private static final String SUBJECT = "s";
+    private static final String DOMAIN = "d";
+
+    /**
+     * Unit is the rules read for one subject, or one domain, shared by all the residents that need them.
+     */
+    private static class Unit {
+        final List<CasbinRule> rules = new ArrayList<>();
+        final Set<String> roles = new LinkedHashSet<>();
+        int references = 0;
+    }
+
+    /**
+     * Resident is a subject, or domain, that has been enforced, with the units it needs.
+     */
+    private static class Resident {
+        final Collection<String> units;
+        volatile long lastAccess;
+
+        Resident(Collection<String> units, long lastAccess) {
+            this.units = units;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final MybatisAdapter adapter;
+    private final Enforcer enforcer;
+    private final int maxRules;
+    private final List<String> subjectTypes = new ArrayList<>();
+    private final List<String> otherRoleTypes = new ArrayList<>();
+    private volatile boolean loadByDomain = false;
+
+    // Enforcements hold the read lock, changes of the model the write lock, and loads the loading lock,
+    // so the rules can be read without blocking enforcements.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object loading = new Object();
+    private final Map<String, Resident> residents = new ConcurrentHashMap<>();
+    private final Map<String, Unit> units = new HashMap<>();
+    private final Map<CasbinRule, Integer> ruleReferences = new HashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * LazyPolicyLoader is the constructor, which clears the policy of the enforcer.
+     *
+     * @param adapter the adapter to read the rules from.
+     * @param enforcer the enforcer, created without loading the policy.
+     * @param maxRules the number of rules above which the least recently enforced subjects are removed from the model.
+     */
+    public LazyPolicyLoader(MybatisAdapter adapter, Enforcer enforcer, int maxRules) {
+        if (maxRules <= 0) {
+            throw new IllegalArgumentException("Max rules must be positive: " + maxRules);
+        }
+        this.adapter = adapter;
+        this.enforcer = enforcer;
+        this.maxRules = maxRules;
+        Model model = enforcer.getModel();
+        subjectTypes.addAll(model.model.get("p").keySet());
+        if (model.model.containsKey("g")) {
+            for (String ptype : model.model.get("g").keySet()) {
+                (ROLE_TYPE.equals(ptype) ? subjectTypes : otherRoleTypes).add(ptype);
+            }
+        }
+        invalidateAll();
+    }
+
+    /**
+     * setLoadByDomain makes enforce() load the rules of the domain of the request, its second value,
+     * instead of those of the subject, for models with domains where a domain holds few rules.
+     *
+     * @param loadByDomain true to load by domain, false by default.
+     */
+    public void setLoadByDomain(boolean loadByDomain) {
+        this.loadByDomain = loadByDomain;
+    }
+
+    /**
+     * enforce loads the rules of the subject of the request, its first value, or of its domain
+     * with setLoadByDomain(), if they are not loaded yet, then enforces the request.
+     *
+     * @param rvals the request values, usually subject, object and action.
+     * @return whether the request is allowed.
+     */
+    public boolean enforce(Object... rvals) {
+        acquire(loadByDomain ? DOMAIN + rvals[1] : SUBJECT + rvals[0]);
+        try {
+            return enforcer.enforce(rvals);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * loadSubject loads the rules of the subject and of its roles, if they are not loaded yet.
+     *
+     * @param subject the subject.
+     */
+    public void loadSubject(String subject) {
+        acquire(SUBJECT + subject);
+        lock.readLock().unlock();
+    }
+
+    /**
+     * loadDomain loads the rules of the domain, if they are not loaded yet.
+     *
+     * @param domain the domain.
+     */
+    public void loadDomain(String domain) {
+        acquire(DOMAIN + domain);
+        lock.readLock().unlock();
+    }
+
+    /**
+     * invalidateAll removes all the rules from the model, so they are read again when they are enforced.
+     * The rules of the role types that don't belong to a subject are read again right away.
+     */
+    public void invalidateAll() {
+        synchronized (loading) {
+            List<CasbinRule> rules = otherRoleTypes.isEmpty() ? Collections.<CasbinRule>emptyList()
+                    : adapter.loadRules(new CasbinRuleFilter().ptype(otherRoleTypes.toArray(new String[0])));
+            lock.writeLock().lock();
+            try {
+                residents.clear();
+                units.clear();
+                ruleReferences.clear();
+                enforcer.clearPolicy();
+                Model model = enforcer.getModel();
+                for (CasbinRule line : rules) {
+                    model.addPolicy(section(line), line.getPtype(), MybatisAdapter.policyValues(line));
+                }
+                enforcer.buildRoleLinks();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * getHitCount returns how many subjects, or domains, were enforced with their rules already loaded.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * getMissCount returns how many subjects, or domains, had their rules read from the database.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * getEvictionCount returns how many subjects, or domains, had their rules removed from the model.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * getRuleCount returns how many of the loaded rules are in the model.
+     */
+    public int getRuleCount() {
+        lock.readLock().lock();
+        try {
+            return ruleReferences.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * acquire loads the rules of the key if needed, and returns with the read lock held,
+     * so they are not removed before the request is enforced.
+     */
+    private void acquire(String key) {
+        lock.readLock().lock();
+        if (touch(key)) {
+            return;
+        }
+        lock.readLock().unlock();
+
+        synchronized (loading) {
+            // Only loads remove residents, so a resident found here is still there with the read lock.
+            if (residents.containsKey(key)) {
+                lock.readLock().lock();
+                touch(key);
+                return;
+            }
+            misses.increment();
+            Collection<String> needed;
+            try {
+                needed = key.startsWith(DOMAIN) ? readDomain(key.substring(1)) : readSubject(key.substring(1));
+            } catch (RuntimeException e) {
+                units.values().removeIf(unit -> unit.references == 0);
+                throw e;
+            }
+
+            lock.writeLock().lock();
+            try {
+                Map<String, List<List<String>>> added = new LinkedHashMap<>();
+                for (String name : needed) {
+                    Unit unit = units.get(name);
+                    if (unit.references++ == 0) {
+                        for (CasbinRule line : unit.rules) {
+                            if (ruleReferences.merge(line, 1, Integer::sum) == 1) {
+                                added.computeIfAbsent(line.getPtype(), ptype -> new ArrayList<>()).add(MybatisAdapter.policyValues(line));
+                            }
+                        }
+                    }
+                }
+                updateModel(added, true);
+                residents.put(key, new Resident(needed, clock.incrementAndGet()));
+                evict(key);
+                lock.readLock().lock();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private boolean touch(String key) {
+        Resident resident = residents.get(key);
+        if (resident == null) {
+            return false;
+        }
+        resident.lastAccess = clock.incrementAndGet();
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * readSubject reads the units of the subject and of its roles that are not loaded yet, one level of the
+     * role hierarchy at a time, and returns the names of all the units the subject needs.
+     */
+    private Collection<String> readSubject(String subject) {
+        Set<String> needed = new LinkedHashSet<>();
+        Collection<String> level = Collections.singletonList(subject);
+        while (!level.isEmpty()) {
+            List<String> missing = new ArrayList<>();
+            for (String name : level) {
+                if (!units.containsKey(SUBJECT + name)) {
+                    missing.add(name);
+                }
+            }
+            for (int from = 0; from < missing.size(); from += VALUES_PER_QUERY) {
+                List<String> chunk = missing.subList(from, Math.min(from + VALUES_PER_QUERY, missing.size()));
+                Map<String, Unit> read = new HashMap<>();
+                for (String name : chunk) {
+                    read.put(name, new Unit());
+                }
+                CasbinRuleFilter filter = new CasbinRuleFilter()
+                        .ptype(subjectTypes.toArray(new String[0]))
+                        .field(0, chunk.toArray(new String[0]));
+                for (CasbinRule line : adapter.loadRules(filter)) {
+                    // A case-insensitive collation also returns the subjects that only differ in case.
+                    Unit unit = read.get(line.getV0());
+                    if (unit != null) {
+                        unit.rules.add(line);
+                        if (ROLE_TYPE.equals(line.getPtype()) && line.getV1() != null) {
+                            unit.roles.add(line.getV1());
+                        }
+                    }
+                }
+                read.forEach((name, unit) -> units.put(SUBJECT + name, unit));
+            }
+
+            Set<String> next = new LinkedHashSet<>();
+            for (String name : level) {
+                if (needed.add(SUBJECT + name)) {
+                    for (String role : units.get(SUBJECT + name).roles) {
+                        if (!needed.contains(SUBJECT + role)) {
+                            next.add(role);
+                        }
+                    }
+                }
+            }
+            level = next;
+        }
+        return needed;
+    }
+
+    /**
+     * readDomain reads the unit of the domain if it is not loaded yet: the p rules with the domain
+     * in their dom field, and the g rules with the domain as third value.
+     */
+    private Collection<String> readDomain(String domain) {
+        String name = DOMAIN + domain;
+        if (!units.containsKey(name)) {
+            Map<Integer, List<String>> ptypesByField = new LinkedHashMap<>();
+            for (String ptype : subjectTypes) {
+                ptypesByField.computeIfAbsent(domainField(ptype), field -> new ArrayList<>()).add(ptype);
+            }
+            Unit unit = new Unit();
+            for (Map.Entry<Integer, List<String>> entry : ptypesByField.entrySet()) {
+                CasbinRuleFilter filter = new CasbinRuleFilter()
+                        .ptype(entry.getValue().toArray(new String[0]))
+                        .field(entry.getKey(), domain);
+                for (CasbinRule line : adapter.loadRules(filter)) {
+                    if (domain.equals(policyValue(line, entry.getKey()))) {
+                        unit.rules.add(line);
+                    }
+                }
+            }
+            units.put(name, unit);
+        }
+        return Collections.singletonList(name);
+    }
+
+    private int domainField(String ptype) {
+        if (ptype.startsWith(ROLE_TYPE)) {
+            return 2;
+        }
+        int field = Arrays.asList(enforcer.getModel().model.get("p").get(ptype).tokens).indexOf(ptype + "_dom");
+        return field < 0 ? 1 : field;
+    }
+
+    /**
+     * evict removes the least recently enforced residents, except the one just loaded,
+     * until the model holds at most maxRules of the loaded rules.
+     */
+    private void evict(String current) {
+        Map<String, List<List<String>>> removed = new LinkedHashMap<>();
+        while (ruleReferences.size() > maxRules && residents.size() > 1) {
+            String oldest = null;
+            long oldestAccess = Long.MAX_VALUE;
+            for (Map.Entry<String, Resident> entry : residents.entrySet()) {
+                if (!entry.getKey().equals(current) && entry.getValue().lastAccess < oldestAccess) {
+                    oldest = entry.getKey();
+                    oldestAccess = entry.getValue().lastAccess;
+                }
+            }
+            for (String name : residents.remove(oldest).units) {
+                Unit unit = units.get(name);
+                if (--unit.references == 0) {
+                    units.remove(name);
+                    for (CasbinRule line : unit.rules) {
+                        if (ruleReferences.merge(line, -1, Integer::sum) == 0) {
+                            ruleReferences.remove(line);
+                            removed.computeIfAbsent(line.getPtype(), ptype -> new ArrayList<>()).add(MybatisAdapter.policyValues(line));
+                        }
+                    }
+                }
+            }
+            evictions.increment();
+        }
+        updateModel(removed, false);
+    }
+
+    private void updateModel(Map<String, List<List<String>>> rules, boolean add) {
+        Model model = enforcer.getModel();
+        for (Map.Entry<String, List<List<String>>> entry : rules.entrySet()) {
+            String ptype = entry.getKey();
+            String sec = ptype.substring(0, 1);
+            List<List<String>> changed = new ArrayList<>();
+            for (List<String> rule : entry.getValue()) {
+                // Rules already added, or already removed, through the enforcer are left as they are.
+                if (add ? model.addPolicy(sec, ptype, rule) : model.removePolicy(sec, ptype, rule)) {
+                    changed.add(rule);
+                }
+            }
+            if ("g".equals(sec) && !changed.isEmpty()) {
+                enforcer.buildIncrementalRoleLinks(add ? Model.PolicyOperations.POLICY_ADD : Model.PolicyOperations.POLICY_REMOVE, ptype, changed);
+            }
+        }
+    }
+
+    private static String section(CasbinRule line) {
+        return line.getPtype().substring(0, 1);
+    }
+
+    private static String policyValue(CasbinRule line, int fieldIndex) {
+        List<String> values = MybatisAdapter.policyValues(line);
+        return fieldIndex < values.size() ? values.get(fieldIndex) : null;
+    }
+}
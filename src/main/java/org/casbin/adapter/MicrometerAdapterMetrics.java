@@ -0,0 +1,128 @@
+package org.casbin.adapter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.ibatis.datasource.pooled.PoolState;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MicrometerAdapterMetrics publishes the adapter metrics to a Micrometer MeterRegistry.
+ * micrometer-core is an optional dependency, so it must be added to the application to use this class.
+ *
+ * Meters:
+ * casbin.adapter.operation (timer, with p50/p95/p99, tags operation and outcome),
+ * casbin.adapter.rows (counter, tag operation),
+ * casbin.adapter.batch.rows (distribution summary),
+ * casbin.adapter.intern.distinct and casbin.adapter.intern.saved (distribution summaries per load, tag operation),
+ * casbin.adapter.session (timer),
+ * casbin.adapter.pool.* (gauges of the connection pool built by the adapter).
+ */
+public class MicrometerAdapterMetrics implements AdapterMetrics {
+    private final MeterRegistry registry;
+    private final Tags tags;
+    private final Map<String, Timer> succeeded = new ConcurrentHashMap<>();
+    private final Map<String, Timer> failed = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rows = new ConcurrentHashMap<>();
+    private final DistributionSummary batchRows;
+    private final Timer session;
+
+    /**
+     * MicrometerAdapterMetrics is the constructor for MicrometerAdapterMetrics.
+     *
+     * @param registry the registry to publish the meters to.
+     * @param tags the tags added to all meters, like "name", "casbin".
+     */
+    public MicrometerAdapterMetrics(MeterRegistry registry, String... tags) {
+        this.registry = registry;
+        this.tags = Tags.of(tags);
+        this.batchRows = DistributionSummary.builder("casbin.adapter.batch.rows")
+                .description("Rows sent to the database in one JDBC batch")
+                .tags(this.tags)
+                .register(registry);
+        this.session = Timer.builder("casbin.adapter.session")
+                .description("Time a SqlSession, and so its connection, has been held")
+                .tags(this.tags)
+                .register(registry);
+    }
+
+    @Override
+    public void recordOperation(String operation, long durationNanos, boolean failed) {
+        Map<String, Timer> timers = failed ? this.failed : this.succeeded;
+        Timer timer = timers.computeIfAbsent(operation, key -> Timer.builder("casbin.adapter.operation")
+                .description("Time spent in an adapter operation")
+                .tags(tags)
+                .tag("operation", key)
+                .tag("outcome", failed ? "error" : "success")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry));
+        timer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordRows(String operation, long rows) {
+        this.rows.computeIfAbsent(operation, key -> Counter.builder("casbin.adapter.rows")
+                .description("Rows read or written by an adapter operation")
+                .tags(tags)
+                .tag("operation", key)
+                .register(registry))
+                .increment(rows);
+    }
+
+    @Override
+    public void recordInterning(String operation, long values, long distinctValues, long bytesSaved) {
+        DistributionSummary.builder("casbin.adapter.intern.distinct")
+                .description("Distinct rule values kept by a load")
+                .tags(tags)
+                .tag("operation", operation)
+                .register(registry)
+                .record(distinctValues);
+        DistributionSummary.builder("casbin.adapter.intern.saved")
+                .description("Estimated heap saved by sharing equal rule values in a load")
+                .baseUnit("bytes")
+                .tags(tags)
+                .tag("operation", operation)
+                .register(registry)
+                .record(bytesSaved);
+    }
+
+    @Override
+    public void recordBatch(int rows) {
+        batchRows.record(rows);
+    }
+
+    @Override
+    public void recordSession(long durationNanos) {
+        session.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void bindConnectionPool(PooledDataSource pool) {
+        PoolState state = pool.getPoolState();
+        Tags poolTags = tags.and(Tag.of("pool", "mybatis"));
+        Gauge.builder("casbin.adapter.pool.active", state, PoolState::getActiveConnectionCount)
+                .tags(poolTags).register(registry);
+        Gauge.builder("casbin.adapter.pool.idle", state, PoolState::getIdleConnectionCount)
+                .tags(poolTags).register(registry);
+        Gauge.builder("casbin.adapter.pool.max", pool, PooledDataSource::getPoolMaximumActiveConnections)
+                .tags(poolTags).register(registry);
+        Gauge.builder("casbin.adapter.pool.requests", state, PoolState::getRequestCount)
+                .tags(poolTags).register(registry);
+        Gauge.builder("casbin.adapter.pool.waits", state, PoolState::getHadToWaitCount)
+                .tags(poolTags).register(registry);
+        Gauge.builder("casbin.adapter.pool.wait.average", state, PoolState::getAverageWaitTime)
+                .baseUnit("milliseconds").tags(poolTags).register(registry);
+        Gauge.builder("casbin.adapter.pool.checkout.average", state, PoolState::getAverageCheckoutTime)
+                .baseUnit("milliseconds").tags(poolTags).register(registry);
+        Gauge.builder("casbin.adapter.pool.overdue", state, PoolState::getClaimedOverdueConnectionCount)
+                .tags(poolTags).register(registry);
+    }
+}
@@ -2,21 +2,44 @@ package org.casbin.adapter;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.casbin.jcasbin.exception.CasbinAdapterException;
 import org.casbin.jcasbin.model.Assertion;
 import org.casbin.jcasbin.model.Model;
 import org.casbin.jcasbin.persist.Adapter;
 import org.casbin.jcasbin.persist.BatchAdapter;
-import org.casbin.jcasbin.persist.Helper;
+import org.casbin.jcasbin.persist.FilteredAdapter;
+import org.casbin.jcasbin.persist.UpdatableAdapter;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 
@@ -24,13 +47,53 @@ import java.util.stream.Collectors;
  * MybatisAdapter is the Mybatis adapter for jCasbin.
  * It can load policy from Mybatis supported database or save policy to it.
  */
-public class MybatisAdapter implements Adapter, BatchAdapter {
+public class MybatisAdapter implements Adapter, BatchAdapter, FilteredAdapter, UpdatableAdapter, AutoCloseable {
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_]+");
+    // Versions recorded in casbin_rule_schema, see migrate().
+    private static final int RULE_TABLE_VERSION = 2;
+    private static final int TABLE_VERSION = 1;
+    private static final long RETRY_BACKOFF_MILLIS = 10;
+    private static final Comparator<String> VALUE_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
     private String driver;
+    private Dialect dialect;
     private String url;
     private String username;
     private String password;
     private boolean dbSpecified;
+    private DataSource dataSource;
+    private PooledDataSource pooledDataSource;
+    private MybatisAdapterBuilder poolSettings;
     private SqlSessionFactory factory;
+    private volatile boolean isFiltered = false;
+    private int batchSize = 1000;
+    private int maxRowsPerStatement = 0;
+    private boolean diffSave = false;
+    private boolean changeLog = false;
+    private int changeLogWindow = 1000;
+    private final Map<Model, AppliedChanges> appliedChanges = Collections.synchronizedMap(new WeakHashMap<>());
+    private volatile AdapterMetrics metrics = AdapterMetrics.NOOP;
+    private AsyncRunner asyncRunner;
+    private volatile WriteBehindBuffer writeBehind;
+    private int loadParallelism = 1;
+    private Path snapshotFile;
+    private volatile MybatisWatcher watcher;
+    private int maxInternedValues = 0;
+    private String tableName = "casbin_rule";
+    private String schema;
+    private TableLayout tableLayout = TableLayout.SINGLE;
+    private final Map<String, String> ruleTables = new ConcurrentHashMap<>();
+    private boolean bulkSave = false;
+    private boolean dedup = false;
+    private int deadlockRetries = 3;
+    private RuleDictionary dictionary;
+    private SchemaMode schemaMode = SchemaMode.MIGRATE;
+    private final Map<String, Integer> schemaVersions = new ConcurrentHashMap<>();
+    private boolean schemaRecorded = false;
+    private final Set<String> idTables = ConcurrentHashMap.newKeySet();
+    private ReplicaRouter replicas;
+    private long readYourWritesNanos = 0;
+    private volatile long lastWriteNanos;
 
     /**
      * MybatisAdapter is the constructor for MybatisAdapter.
@@ -71,10 +134,124 @@ public class MybatisAdapter implements Adapter, BatchAdapter {
         open();
     }
 
+    /**
+     * MybatisAdapter is the constructor for MybatisAdapter.
+     *
+     * @param dataSource an existing DataSource, like a shared connection pool. The DB it points to must exist.
+     */
+    public MybatisAdapter(DataSource dataSource) {
+        this.dataSource = dataSource;
+
+        open();
+    }
+
+    /**
+     * MybatisAdapter is the constructor for MybatisAdapter.
+     *
+     * @param sqlSessionFactory an existing SqlSessionFactory. CasbinRuleDao is added to it if missing.
+     */
+    public MybatisAdapter(SqlSessionFactory sqlSessionFactory) {
+        this.factory = sqlSessionFactory;
+
+        open();
+    }
+
+    MybatisAdapter(MybatisAdapterBuilder builder) {
+        this.driver = builder.driver;
+        this.url = builder.url;
+        this.username = builder.username;
+        this.password = builder.password;
+        this.dbSpecified = builder.dbSpecified;
+        this.dataSource = builder.dataSource;
+        this.factory = builder.sqlSessionFactory;
+        this.poolSettings = builder;
+        this.batchSize = builder.batchSize;
+        this.maxRowsPerStatement = builder.maxRowsPerStatement;
+        this.diffSave = builder.diffSave;
+        this.changeLog = builder.changeLog;
+        setChangeLogWindow(builder.changeLogWindow);
+        this.snapshotFile = builder.snapshotFile;
+        this.maxInternedValues = builder.maxInternedValues;
+        this.metrics = builder.metrics;
+        this.tableName = checkName("table name", builder.tableName);
+        this.schema = builder.schema == null ? null : checkName("schema", builder.schema);
+        this.tableLayout = Objects.requireNonNull(builder.tableLayout, "tableLayout");
+        this.dialect = builder.dialect;
+        this.bulkSave = builder.bulkSave;
+        this.dedup = builder.dedup;
+        setDeadlockRetries(builder.deadlockRetries);
+        this.schemaMode = Objects.requireNonNull(builder.schemaMode, "schemaMode");
+        if (builder.dictionary) {
+            this.dictionary = new RuleDictionary(qualify(tableName + "_dict"));
+        }
+        setLoadParallelism(builder.loadParallelism);
+        setReadYourWrites(builder.readYourWritesMillis);
+
+        open();
+        if (!builder.readReplicas.isEmpty()) {
+            this.replicas = new ReplicaRouter(builder.readReplicas, this::initSqlSessionFactory, builder.replicaRetryMillis);
+        }
+        if (pooledDataSource != null) {
+            metrics.bindConnectionPool(pooledDataSource);
+        }
+        if (builder.writeBehindMaxPending > 0) {
+            setWriteBehind(builder.writeBehindMaxPending, builder.writeBehindMaxDelayMillis, builder.writeBehindWaitForCommit);
+        }
+        if (builder.asyncExecutor != null || builder.maxInFlight > 0) {
+            setAsyncExecutor(builder.asyncExecutor, builder.maxInFlight);
+        }
+        if (builder.fetchSize != null) {
+            setFetchSize(builder.fetchSize);
+        }
+    }
+
+    /**
+     * builder returns a builder to create a MybatisAdapter with an existing DataSource,
+     * an existing SqlSessionFactory, or custom connection pool settings.
+     *
+     * @return the builder.
+     */
+    public static MybatisAdapterBuilder builder() {
+        return new MybatisAdapterBuilder();
+    }
+
 
-    private DataSource getDataSource(String driver, String url, String username, String password){
-        PooledDataSource dataSource = new PooledDataSource(driver, url, username, password);
+    private PooledDataSource getDataSource(String driver, String url, String username, String password){
+        Properties properties = new Properties();
+        if (bulkSave) {
+            dialect.configureBulkLoad(properties);
+        }
+        if (poolSettings != null) {
+            properties.putAll(poolSettings.driverProperties);
+        }
+        if (username != null) {
+            properties.setProperty("user", username);
+        }
+        if (password != null) {
+            properties.setProperty("password", password);
+        }
+        PooledDataSource dataSource = new PooledDataSource(driver, url, properties);
         dataSource.setDefaultAutoCommit(true);
+
+        if (poolSettings != null) {
+            if (poolSettings.poolMaximumActiveConnections != null) {
+                dataSource.setPoolMaximumActiveConnections(poolSettings.poolMaximumActiveConnections);
+            }
+            if (poolSettings.poolMaximumIdleConnections != null) {
+                dataSource.setPoolMaximumIdleConnections(poolSettings.poolMaximumIdleConnections);
+            }
+            if (poolSettings.poolMaximumCheckoutTime != null) {
+                dataSource.setPoolMaximumCheckoutTime(poolSettings.poolMaximumCheckoutTime);
+            }
+            if (poolSettings.poolTimeToWait != null) {
+                dataSource.setPoolTimeToWait(poolSettings.poolTimeToWait);
+            }
+            if (poolSettings.poolPingEnabled != null) {
+                dataSource.setPoolPingEnabled(poolSettings.poolPingEnabled);
+                dataSource.setPoolPingQuery(poolSettings.poolPingQuery);
+                dataSource.setPoolPingConnectionsNotUsedFor(poolSettings.poolPingConnectionsNotUsedFor);
+            }
+        }
         return dataSource;
     }
 
@@ -101,250 +278,2249 @@ public class MybatisAdapter implements Adapter, BatchAdapter {
         return url + "?characterEncoding=utf-8&&serverTimezone=UTC&&useSSL=false";
     }
 
+    private static String detectDriver(SqlSessionFactory factory) {
+        DataSource dataSource = factory.getConfiguration().getEnvironment().getDataSource();
+        try (Connection connection = dataSource.getConnection()) {
+            String jdbcUrl = connection.getMetaData().getURL();
+            if (jdbcUrl.startsWith("jdbc:mysql:")) {
+                return "com.mysql.cj.jdbc.Driver";
+            } else if (jdbcUrl.startsWith("jdbc:sqlserver:")) {
+                return "com.microsoft.sqlserver.jdbc.SQLServerDriver";
+            } else if (jdbcUrl.startsWith("jdbc:oracle:")) {
+                return "oracle.jdbc.OracleDriver";
+            } else if (jdbcUrl.startsWith("jdbc:h2:")) {
+                return "org.h2.Driver";
+            }
+            return "";
+        } catch (SQLException e) {
+            throw new CasbinAdapterException("Failed to detect the database type", e);
+        }
+    }
+
 
 
     private void createDatabase(){
         SqlSession sqlSession = factory.openSession(true);
-        CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+        try {
+            dialect.createDatabase(sqlSession.getMapper(CasbinRuleDao.class), "casbin");
+        } finally {
+            sqlSession.close();
+        }
+    }
 
-        switch (driver) {
-            case "com.mysql.cj.jdbc.Driver":
-                casbinRuleDao.createMysqlDatabase("casbin");
-                break;
-            case "com.microsoft.sqlserver.jdbc.SQLServerDriver":
-                casbinRuleDao.createSqlServerDatabase("casbin");
-                break;
+    private static boolean canConnect(DataSource dataSource) {
+        try (Connection ignored = dataSource.getConnection()) {
+            return true;
+        } catch (SQLException e) {
+            return false;
         }
+    }
 
-        sqlSession.close();
+    /**
+     * readSchemaVersions reads the versions of the tables from the casbin_rule_schema table, and creates it if needed.
+     * If the dialect can't create it, versions are not recorded and migrate() runs the DDL on every start.
+     */
+    private void readSchemaVersions() {
+        schemaVersions.clear();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                for (SchemaVersion version : runInSession(sqlSession -> sqlSession.getMapper(CasbinRuleDao.class).selectSchemaVersions(schemaTable()))) {
+                    schemaVersions.put(version.getTableName(), version.getVersion());
+                }
+                schemaRecorded = true;
+                return;
+            } catch (PersistenceException e) {
+                if (schemaMode == SchemaMode.VALIDATE) {
+                    throw new CasbinAdapterException("Failed to read the schema versions from " + schemaTable(), e);
+                }
+                if (attempt == 0) {
+                    runInSession(sqlSession -> {
+                        dialect.createSchemaTable(sqlSession.getMapper(CasbinRuleDao.class), schemaTable(), tableName + "_schema");
+                        return null;
+                    });
+                }
+            }
+        }
+        schemaRecorded = false;
     }
 
-    private void createTable(){
-        SqlSession sqlSession = factory.openSession(true);
-        CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+    /**
+     * migrate brings the table, or index, to the version with the migration, then records the version,
+     * unless the recorded version is current already. The migration is passed the recorded version,
+     * 0 for tables created before versions were recorded, and must be idempotent, as several nodes may run it at once.
+     */
+    private void migrate(String name, int version, IntConsumer migration) {
+        Integer recorded = schemaVersions.get(name);
+        if (recorded != null && recorded >= version) {
+            return;
+        }
+        if (schemaMode == SchemaMode.VALIDATE) {
+            throw new CasbinAdapterException("The schema of " + qualify(name) + " is at version "
+                    + (recorded == null ? 0 : recorded) + " instead of " + version);
+        }
+        migration.accept(recorded == null ? 0 : recorded);
+        if (schemaRecorded) {
+            runInSession(sqlSession -> {
+                CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+                if (casbinRuleDao.updateSchemaVersion(schemaTable(), name, version) == 0) {
+                    try {
+                        casbinRuleDao.insertSchemaVersion(schemaTable(), name, version);
+                    } catch (PersistenceException e) {
+                        // Another node recorded it first.
+                        casbinRuleDao.updateSchemaVersion(schemaTable(), name, version);
+                    }
+                }
+                return null;
+            });
+        }
+        schemaVersions.put(name, version);
+    }
+
+    private void forgetSchemaVersion(String name) {
+        if (schemaVersions.remove(name) != null) {
+            runInSession(sqlSession -> {
+                sqlSession.getMapper(CasbinRuleDao.class).deleteSchemaVersion(schemaTable(), name);
+                return null;
+            });
+        }
+    }
 
-        switch (driver){
-            case "oracle.jdbc.OracleDriver":
-                casbinRuleDao.createOracleTable("casbin_rule");
+    private void createTables(){
+        if (dictionary != null) {
+            migrate(tableName + "_dict", TABLE_VERSION, from -> runInSession(sqlSession -> {
+                dialect.createDictionaryTable(sqlSession.getMapper(CasbinRuleDao.class), dictionary.getTable(), tableName + "_dict");
+                return null;
+            }));
+        }
+        switch (tableLayout) {
+            case SINGLE:
+                createTable(tableName);
                 break;
-            case "com.mysql.cj.jdbc.Driver":
-                casbinRuleDao.createMysqlTable("casbin_rule");
+            case PER_SECTION:
+                createTable(tableName + "_p");
+                createTable(tableName + "_g");
                 break;
-            case "com.microsoft.sqlserver.jdbc.SQLServerDriver":
-                casbinRuleDao.createSqlServerTable("casbin_rule");
+            case PER_PTYPE:
+                // The table of a ptype is created when it is first used, see ruleTable().
                 break;
         }
+    }
 
-        sqlSession.close();
+    private void createTable(String baseName){
+        String table = qualify(baseName);
+        migrate(baseName, RULE_TABLE_VERSION, from -> runInSession(sqlSession -> {
+            CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+            if (from == 0) {
+                createRuleTable(casbinRuleDao, table, baseName);
+            }
+            // Version 2 added the id primary key and the index over the whole rule.
+            if (!hasIdColumn(table)) {
+                dialect.addRuleKeys(casbinRuleDao, table, baseName);
+            }
+            return null;
+        }));
+        if (dedup) {
+            migrate("uk_" + baseName, TABLE_VERSION, from -> createUniqueIndex(table, baseName));
+        }
+        // Tables created by other means, when versions aren't recorded, may lack the id column.
+        if (schemaRecorded || hasIdColumn(table)) {
+            idTables.add(table);
+        }
+        ruleTables.put(table, baseName);
     }
 
+    /**
+     * orderById returns whether the rows of the table are read in the order they were inserted, which the model
+     * keeps for priority effects. The table is read in the order of the id primary key, since the database
+     * may otherwise scan the index over the whole rule, which covers all the other columns.
+     */
+    private boolean orderById(String table) {
+        return idTables.contains(table);
+    }
 
-    private void dropTable(){
-        SqlSession sqlSession = factory.openSession(true);
-        CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+    private boolean hasIdColumn(String table) {
+        try {
+            runInSession(sqlSession -> sqlSession.getMapper(CasbinRuleDao.class).probeIdColumn(table));
+            return true;
+        } catch (PersistenceException e) {
+            return false;
+        }
+    }
 
-        switch (driver){
-            case "oracle.jdbc.OracleDriver":
-                casbinRuleDao.dropOracleTable("casbin_rule");
-                break;
-            case "com.mysql.cj.jdbc.Driver":
-                casbinRuleDao.dropMysqlTable("casbin_rule");
-                break;
-            case "com.microsoft.sqlserver.jdbc.SQLServerDriver":
-                casbinRuleDao.dropSqlServerTable("casbin_rule");
-                break;
+    private void createRuleTable(CasbinRuleDao casbinRuleDao, String table, String baseName) {
+        if (dictionary != null) {
+            dialect.createIdTable(casbinRuleDao, table, baseName);
+        } else {
+            dialect.createTable(casbinRuleDao, table, baseName);
         }
+    }
 
-        sqlSession.close();
+    /**
+     * createUniqueIndex adds the unique index of the dedup mode. If the table already holds duplicates,
+     * written before dedup was enabled, they are removed first.
+     */
+    private void createUniqueIndex(String table, String baseName) {
+        try {
+            runInSession(sqlSession -> {
+                dialect.createUniqueIndex(sqlSession.getMapper(CasbinRuleDao.class), table, baseName);
+                return null;
+            });
+        } catch (PersistenceException e) {
+            if (removeDuplicates(table) == 0) {
+                throw e;
+            }
+            runInSession(sqlSession -> {
+                dialect.createUniqueIndex(sqlSession.getMapper(CasbinRuleDao.class), table, baseName);
+                return null;
+            });
+        }
     }
 
-    private void open(){
-        this.factory = initSqlSessionFactory(getDataSource(driver,getUrl(url),username,password));
+    /**
+     * removeDuplicates rewrites the table with one row per rule if it has duplicates, and returns how many rows were removed.
+     * The rows are not deleted one rule at a time, since on a case-insensitive collation that would delete rules that only differ in case.
+     * The policy itself doesn't change, so this doesn't go through runInTransaction() and doesn't invalidate snapshots.
+     */
+    private int removeDuplicates(String table) {
+        SqlSession sqlSession = factory.openSession(ExecutorType.BATCH, false);
+        try {
+            CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+            Set<CasbinRule> rules = new LinkedHashSet<>();
+            int[] rows = new int[1];
+            casbinRuleDao.streamAll(table, orderById(table), context -> {
+                rules.add(context.getResultObject());
+                rows[0]++;
+            });
+            if (rules.size() == rows[0]) {
+                return 0;
+            }
+            casbinRuleDao.deleteAll(table);
+            BatchInserter inserter = new BatchInserter(sqlSession, getMaxRowsPerStatement(), batchSize, metrics, null);
+            inserter.addAll(table, new ArrayList<>(rules));
+            inserter.finish();
+            sqlSession.commit(true);
+            return rows[0] - rules.size();
+        } catch (RuntimeException e) {
+            sqlSession.rollback(true);
+            throw e;
+        } finally {
+            sqlSession.close();
+        }
+    }
 
-        if (!dbSpecified){
-            createDatabase();
-            this.factory = initSqlSessionFactory(getDataSource(driver, getUrl(url + "casbin"), username, password));
+    private static String checkName(String kind, String name) {
+        // Table names can't be bound as parameters, so they are checked before being put in the SQL.
+        if (name == null || !NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid " + kind + ": " + name);
         }
+        return name;
+    }
+
+    private String qualify(String name) {
+        return schema == null ? name : schema + "." + name;
+    }
 
-        createTable();
+    private String logTable() {
+        return qualify(tableName + "_log");
     }
 
+    private String revisionTable() {
+        return qualify(tableName + "_revision");
+    }
 
+    private String schemaTable() {
+        return qualify(tableName + "_schema");
+    }
 
     /**
-     * loadPolicy loads all policy rules from the storage.
+     * ruleTable returns the table storing the rules of the ptype, and creates it if needed.
      */
-    @Override
-    public void loadPolicy(Model model) {
-        SqlSession sqlSession = factory.openSession(true);
-        CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
-        List<CasbinRule> casbinRules = casbinRuleDao.loadAll();
-        for (CasbinRule line : casbinRules) {
-            loadPolicyLine(line, model);
+    private String ruleTable(String ptype) {
+        String baseName;
+        switch (tableLayout) {
+            case PER_SECTION:
+                baseName = tableName + "_" + checkName("ptype", ptype).substring(0, 1);
+                break;
+            case PER_PTYPE:
+                baseName = tableName + "_" + checkName("ptype", ptype);
+                break;
+            default:
+                baseName = tableName;
+                break;
+        }
+        String table = qualify(baseName);
+        if (!ruleTables.containsKey(table)) {
+            createTable(baseName);
         }
-        sqlSession.close();
+        return table;
     }
 
-    private static void loadPolicyLine(CasbinRule line, Model model){
-        String lineText = line.getPtype();
-        if (line.getV0() != null) {
-            lineText += ", " + line.getV0();
-        }
-        if (line.getV1() != null) {
-            lineText += ", " + line.getV1();
-        }
-        if (line.getV2() != null) {
-            lineText += ", " + line.getV2();
-        }
-        if (line.getV3() != null) {
-            lineText += ", " + line.getV3();
-        }
-        if (line.getV4() != null) {
-            lineText += ", " + line.getV4();
-        }
-        if (line.getV5() != null) {
-            lineText += ", " + line.getV5();
+    /**
+     * ruleTables returns the table of each ptype of the model.
+     */
+    private Map<String, String> ruleTables(Model model) {
+        Map<String, String> tables = new LinkedHashMap<>();
+        for (String sec : new String[]{"p", "g"}) {
+            Map<String, Assertion> section = model.model.get(sec);
+            if (section != null) {
+                for (String ptype : section.keySet()) {
+                    tables.put(ptype, ruleTable(ptype));
+                }
+            }
         }
-        Helper.loadPolicyLine(lineText,model);
+        return tables;
     }
 
-
     /**
-     * savePolicy saves all policy rules to the storage.
+     * knownRuleTables returns the rule tables created or used by this adapter, in a fixed order.
      */
-    @Override
-    public void savePolicy(Model model) {
-        dropTable();
-        createTable();
+    private List<String> knownRuleTables() {
+        List<String> tables = new ArrayList<>(ruleTables.keySet());
+        Collections.sort(tables);
+        return tables;
+    }
 
 
-        SqlSession sqlSession = factory.openSession(true);
-        CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+    private void createChangeLogTable(){
+        migrate(tableName + "_log", TABLE_VERSION, from -> {
+            SqlSession sqlSession = factory.openSession(true);
+            try {
+                dialect.createChangeLogTable(sqlSession.getMapper(CasbinRuleDao.class), logTable(), tableName + "_log");
+            } finally {
+                sqlSession.close();
+            }
+        });
+    }
 
-        for (Map.Entry<String, Assertion> entry : model.model.get("p").entrySet()) {
-            String ptype = entry.getKey();
-            Assertion ast = entry.getValue();
 
-            for (List<String> rule : ast.policy) {
-                CasbinRule line = savePolicyLine(ptype, rule);
-                casbinRuleDao.insertData(line);
+    private void createRevisionTable(){
+        migrate(tableName + "_revision", TABLE_VERSION, from -> {
+            SqlSession sqlSession = factory.openSession(true);
+            CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+
+            try {
+                dialect.createRevisionTable(casbinRuleDao, revisionTable(), tableName + "_revision");
+                if (casbinRuleDao.countRevisions(revisionTable()) == 0) {
+                    try {
+                        casbinRuleDao.insertRevision(revisionTable());
+                    } catch (PersistenceException e) {
+                        // Another node inserted the row first.
+                        if (casbinRuleDao.countRevisions(revisionTable()) == 0) {
+                            throw e;
+                        }
+                    }
+                }
+            } finally {
+                sqlSession.close();
             }
-        }
+        });
+    }
 
-        for (Map.Entry<String, Assertion> entry : model.model.get("g").entrySet()) {
-            String ptype = entry.getKey();
-            Assertion ast = entry.getValue();
 
-            for (List<String> rule : ast.policy) {
-                CasbinRule line = savePolicyLine(ptype, rule);
-                casbinRuleDao.insertData(line);
+    private void open(){
+        if (dialect == null && driver != null) {
+            dialect = Dialect.forDriver(driver);
+        }
+        if (factory == null) {
+            if (dataSource == null) {
+                PooledDataSource pooled;
+                if (dbSpecified) {
+                    pooled = getDataSource(driver, getUrl(url), username, password);
+                } else {
+                    pooled = getDataSource(driver, getUrl(url + "casbin"), username, password);
+                    // The DB is only created if it can't be connected to, so an existing one costs no DDL.
+                    if (schemaMode == SchemaMode.MIGRATE && !canConnect(pooled)) {
+                        PooledDataSource server = getDataSource(driver, getUrl(url), username, password);
+                        this.factory = initSqlSessionFactory(server);
+                        createDatabase();
+                        // This pool points to the server without a DB, so it's not needed anymore.
+                        server.forceCloseAll();
+                    }
+                }
+                this.pooledDataSource = pooled;
+                this.dataSource = pooled;
             }
+            this.factory = initSqlSessionFactory(dataSource);
+        } else if (!factory.getConfiguration().hasMapper(CasbinRuleDao.class)) {
+            factory.getConfiguration().addMapper(CasbinRuleDao.class);
         }
 
-        sqlSession.close();
-    }
+        if (driver == null) {
+            driver = detectDriver(factory);
+        }
+        if (dialect == null) {
+            dialect = Dialect.forDriver(driver);
+        }
 
-    private CasbinRule savePolicyLine(String ptype, List<String> rule) {
-        CasbinRule line = new CasbinRule();
+        readSchemaVersions();
+        createTables();
+        if (changeLog) {
+            createChangeLogTable();
+        }
+        if (snapshotFile != null) {
+            createRevisionTable();
+        }
+    }
 
-        line.setPtype(ptype);
-        if (rule.size() > 0) {
-            line.setV0(rule.get(0));
+    /**
+     * close writes the queued write-behind changes, then closes the connection pool built by the adapter
+     * and the default executor of the async methods.
+     * A DataSource, SqlSessionFactory or Executor passed to the adapter is left open.
+     */
+    @Override
+    public void close() {
+        MybatisWatcher current = watcher;
+        if (current != null) {
+            current.close();
         }
-        if (rule.size() > 1) {
-            line.setV1(rule.get(1));
+        WriteBehindBuffer buffer = writeBehind;
+        if (buffer != null) {
+            writeBehind = null;
+            buffer.close();
         }
-        if (rule.size() > 2) {
-            line.setV2(rule.get(2));
+        synchronized (this) {
+            // A runner is only created to be closed, so the async methods called after close are rejected too.
+            if (asyncRunner == null) {
+                asyncRunner = new AsyncRunner(null, 1);
+            }
+            asyncRunner.close();
         }
-        if (rule.size() > 3) {
-            line.setV3(rule.get(3));
+        if (pooledDataSource != null) {
+            pooledDataSource.forceCloseAll();
         }
-        if (rule.size() > 4) {
-            line.setV4(rule.get(4));
+    }
+
+
+
+    /**
+     * setFetchSize sets the JDBC fetch size used when streaming policy rules from the storage.
+     * For MySQL Connector/J, use Integer.MIN_VALUE to stream row by row,
+     * or add "useCursorFetch=true" to the URL and use a positive value.
+     *
+     * @param fetchSize the fetch size, or null to use the driver default.
+     */
+    public void setFetchSize(Integer fetchSize) {
+        factory.getConfiguration().setDefaultFetchSize(fetchSize);
+        if (replicas != null) {
+            for (SqlSessionFactory replica : replicas.getFactories()) {
+                replica.getConfiguration().setDefaultFetchSize(fetchSize);
+            }
         }
-        if (rule.size() > 5) {
-            line.setV5(rule.get(5));
+    }
+
+    /**
+     * setReadYourWrites makes loads read from the primary for a while after a change made through this adapter,
+     * so that it sees its own changes even if the read replicas haven't replicated them yet.
+     * It only applies when read replicas are set with MybatisAdapterBuilder.readReplicas().
+     *
+     * @param readYourWritesMillis how long after a change loads read from the primary,
+     * which should cover the replication lag, or 0 to always read from the replicas.
+     */
+    public void setReadYourWrites(long readYourWritesMillis) {
+        if (readYourWritesMillis < 0) {
+            throw new IllegalArgumentException("Read-your-writes delay must not be negative: " + readYourWritesMillis);
         }
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesMillis);
+    }
 
-        return line;
+    /**
+     * readFactory returns where loads read from: the next healthy replica, or the primary if there are
+     * no replicas, they are all down, or this adapter has made a change within the read-your-writes delay.
+     */
+    private SqlSessionFactory readFactory() {
+        if (replicas == null) {
+            return factory;
+        }
+        long written = lastWriteNanos;
+        if (written != 0 && System.nanoTime() - written < readYourWritesNanos) {
+            return factory;
+        }
+        SqlSessionFactory replica = replicas.select();
+        return replica != null ? replica : factory;
+    }
+
+    private void readFailed(SqlSessionFactory reader) {
+        if (reader != factory) {
+            replicas.markDown(reader);
+        }
     }
 
+    private void markWritten() {
+        if (replicas != null) {
+            lastWriteNanos = System.nanoTime();
+        }
+    }
 
     /**
-     * addPolicy adds a policy rule to the storage.
+     * loadPolicy loads all policy rules from the storage.
+     * Rows are streamed from the result set and added to the model one by one,
+     * so the whole table is never held in memory.
      */
     @Override
-    public void addPolicy(String sec, String ptype, List<String> rule) {
-        if(CollectionUtils.isEmpty(rule)) return;
-        CasbinRule line = savePolicyLine(ptype, rule);
+    public void loadPolicy(Model model) {
+        measure("loadPolicy", () -> loadAll(model));
+    }
 
-        SqlSession sqlSession = factory.openSession(true);
-        CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
-        casbinRuleDao.insertData(line);
-        sqlSession.close();
+    private void loadAll(Model model) {
+        flushPending();
+        SqlSessionFactory reader = readFactory();
+        try {
+            loadAll(model, reader);
+        } catch (PersistenceException e) {
+            readFailed(reader);
+            throw e;
+        }
+    }
+
+    private void loadAll(Model model, SqlSessionFactory reader) {
+        Path snapshot = snapshotFile;
+        long revision = 0;
+        if (snapshot != null) {
+            revision = runInSession(reader, sqlSession -> sqlSession.getMapper(CasbinRuleDao.class).selectRevision(revisionTable()));
+            Map<String, List<List<String>>> rules = PolicySnapshot.read(snapshot, revision);
+            if (rules != null) {
+                long rows = 0;
+                for (Map.Entry<String, List<List<String>>> entry : rules.entrySet()) {
+                    addPolicyValues(model, entry.getKey(), entry.getValue());
+                    rows += entry.getValue().size();
+                }
+                metrics.recordRows("loadPolicy", rows);
+                isFiltered = false;
+                return;
+            }
+        }
 
+        ValueInterner interner = newValueInterner();
+        // Rules of ptypes missing from the model are skipped, so their tables aren't read at all.
+        Set<String> tables = new LinkedHashSet<>(ruleTables(model).values());
+        if (loadParallelism > 1) {
+            loadPartitioned(reader, model, tables, interner);
+        } else {
+            long[] rows = new long[1];
+            runInSession(reader, sqlSession -> {
+                CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+                refreshDictionary(casbinRuleDao);
+                List<CasbinRule> deferred = new ArrayList<>();
+                Consumer<CasbinRule> load = line -> {
+                    loadPolicyLine(line, model, interner);
+                    rows[0]++;
+                };
+                for (String table : tables) {
+                    casbinRuleDao.streamAll(table, orderById(table), decoding(deferred, load));
+                }
+                decodeDeferred(casbinRuleDao, deferred, load);
+                return null;
+            });
+            metrics.recordRows("loadPolicy", rows[0]);
+        }
+        recordInterning("loadPolicy", interner);
+        isFiltered = false;
+        if (snapshot != null) {
+            writeSnapshot(snapshot, revision, model);
+        }
     }
 
+    /**
+     * setSnapshotFile enables the local snapshot cache of the policy.
+     * After loadPolicy() reads the policy from the database, or savePolicy() writes it, the policy is
+     * stored in the file together with the revision of the casbin_rule_revision table, which every
+     * change increments in its own transaction. The next loadPolicy(), also in another process,
+     * reads the file instead of the casbin_rule table as long as the revision hasn't changed.
+     *
+     * Only adapters with a snapshot file or a watcher increment the revision, so every adapter writing to the table must enable one.
+     * The file is only a cache, so it is ignored if it can't be read and left as is if it can't be written.
+     *
+     * @param snapshotFile the snapshot file, like "/var/cache/casbin/policy.snapshot", or null to disable it.
+     */
+    public void setSnapshotFile(Path snapshotFile) {
+        if (snapshotFile != null && this.snapshotFile == null) {
+            createRevisionTable();
+        }
+        this.snapshotFile = snapshotFile;
+    }
 
     /**
-     * addPolicies adds policy rules to the storage.
+     * newWatcher returns a Watcher that notifies the enforcer of the changes made by the adapters of other nodes.
+     * From now on, every change of this adapter increments the revision of the casbin_rule_revision table
+     * in its own transaction, and the watcher reads that single row every pollIntervalMillis.
+     * Once the revision has not changed for debounceMillis, the update callback runs once for all the changes.
      *
-     * @param sec   the section, "p" or "g".
-     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
-     * @param rules the policy rules.
+     * Only adapters with a watcher or a snapshot file increment the revision, so every adapter writing
+     * to the table must enable one. The watcher is closed with the adapter, and replaces the previous one.
+     *
+     * @param pollIntervalMillis the delay between two reads of the revision, like 1000.
+     * @param debounceMillis the delay without changes before the callback runs, like 500.
+     * @return the watcher, to pass to Enforcer.setWatcher().
      */
-    @Override
-    public void addPolicies(String sec, String ptype, List<List<String>> rules) {
-        if(CollectionUtils.isEmpty(rules)) {
-            return;
+    public MybatisWatcher newWatcher(long pollIntervalMillis, long debounceMillis) {
+        createRevisionTable();
+        MybatisWatcher created = new MybatisWatcher(
+                () -> runInSession(sqlSession -> sqlSession.getMapper(CasbinRuleDao.class).selectRevision(revisionTable())),
+                pollIntervalMillis, debounceMillis);
+        MybatisWatcher previous = watcher;
+        watcher = created;
+        if (previous != null) {
+            previous.close();
         }
-        List<CasbinRule> casbinRules = rules.stream()
-                .map(rule -> savePolicyLine(sec, rule))
-                .distinct()
-                .collect(Collectors.toList());
+        return created;
+    }
 
-        SqlSession sqlSession = factory.openSession(true);
-        CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
-        casbinRuleDao.insertDataBatch(casbinRules);
-        sqlSession.close();
+    private boolean tracksRevision() {
+        return snapshotFile != null || watcher != null;
     }
 
+    private static void writeSnapshot(Path snapshot, long revision, Model model) {
+        try {
+            PolicySnapshot.write(snapshot, revision, model);
+        } catch (IOException ignored) {
+            // The snapshot is only a cache, the next load reads the database again.
+        }
+    }
 
     /**
-     * removePolicy removes a policy rule from the storage.
+     * loadFilteredPolicy loads only policy rules that match the filter from the storage.
+     * The filter is pushed down to the database as a WHERE clause.
+     *
+     * @param model the model.
+     * @param filter the filter, must be a CasbinRuleFilter, or null to load all rules.
      */
     @Override
-    public void removePolicy(String sec, String ptype, List<String> rule) {
-        if(CollectionUtils.isEmpty(rule)) return;
-        removeFilteredPolicy(sec, ptype, 0, rule.toArray(new String[0]));
+    public void loadFilteredPolicy(Model model, Object filter) throws CasbinAdapterException {
+        if (filter == null) {
+            loadPolicy(model);
+            return;
+        }
+        if (!(filter instanceof CasbinRuleFilter)) {
+            throw new CasbinAdapterException("Invalid filter type: " + filter.getClass().getName());
+        }
+
+        CasbinRuleFilter ruleFilter = (CasbinRuleFilter) filter;
+        measure("loadFilteredPolicy", () -> {
+            flushPending();
+            ValueInterner interner = newValueInterner();
+            Set<String> tables = new LinkedHashSet<>();
+            if (ruleFilter.getPtypes().isEmpty()) {
+                tables.addAll(ruleTables(model).values());
+            } else {
+                for (String ptype : ruleFilter.getPtypes()) {
+                    tables.add(ruleTable(ptype));
+                }
+            }
+            long[] rows = new long[1];
+            streamFiltered(tables, ruleFilter, line -> {
+                loadPolicyLine(line, model, interner);
+                rows[0]++;
+            });
+            metrics.recordRows("loadFilteredPolicy", rows[0]);
+            recordInterning("loadFilteredPolicy", interner);
+            isFiltered = true;
+        });
     }
 
     /**
-     * removePolicies removes some policy rules from the storage.
+     * loadRules reads the rules that match the filter, which must list their ptypes, for LazyPolicyLoader.
+     * The model then only holds part of the policy, so like after loadFilteredPolicy(), the enforcer refuses to save it.
      *
-     * @param sec   the section, "p" or "g".
-     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
-     * @param rules the policy rules.
+     * @param filter the filter.
+     * @return the rules.
      */
-    @Override
-    public void removePolicies(String sec, String ptype, List<List<String>> rules) {
-        rules.forEach(rule -> {
-            removePolicy(sec, ptype, rule);
+    List<CasbinRule> loadRules(CasbinRuleFilter filter) {
+        return measure("lazyLoad", () -> {
+            flushPending();
+            Set<String> tables = new LinkedHashSet<>();
+            for (String ptype : filter.getPtypes()) {
+                tables.add(ruleTable(ptype));
+            }
+            List<CasbinRule> rules = new ArrayList<>();
+            streamFiltered(tables, filter, rules::add);
+            metrics.recordRows("lazyLoad", rules.size());
+            isFiltered = true;
+            return rules;
         });
     }
 
+    private void streamFiltered(Collection<String> tables, CasbinRuleFilter filter, Consumer<CasbinRule> action) {
+        SqlSessionFactory reader = readFactory();
+        try {
+            runInSession(reader, sqlSession -> {
+                CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+                refreshDictionary(casbinRuleDao);
+                List<CasbinRule> deferred = new ArrayList<>();
+                for (String table : tables) {
+                    casbinRuleDao.streamFiltered(table, filter, dictionaryTable(), orderById(table), decoding(deferred, action));
+                }
+                decodeDeferred(casbinRuleDao, deferred, action);
+                return null;
+            });
+        } catch (PersistenceException e) {
+            readFailed(reader);
+            throw e;
+        }
+    }
+
     /**
-     * removeFilteredPolicy removes policy rules that match the filter from the storage.
+     * isFiltered returns true if the loaded policy has been filtered.
      */
     @Override
-    public void removeFilteredPolicy(String sec, String ptype, int fieldIndex, String... fieldValues) {
-        List<String> values = Optional.ofNullable(Arrays.asList(fieldValues)).orElse(new ArrayList<>());
-        if(CollectionUtils.isEmpty(values)) return;
+    public boolean isFiltered() {
+        return isFiltered;
+    }
 
-        SqlSession sqlSession = factory.openSession(true);
-        CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
-        casbinRuleDao.deleteData(ptype, values);
-        sqlSession.close();
+    /**
+     * setMaxInternedValues makes loads share one String instance for equal rule values,
+     * like role names, domains and actions that repeat across many rows, so the heap used
+     * by the model grows with the number of distinct values rather than with the number of rows.
+     * The table of canonical values only lives during a load. The number of values looked up,
+     * the distinct values and an estimate of the bytes saved are reported to the metrics.
+     *
+     * @param maxInternedValues the maximum number of distinct values kept per load, or 0 to disable interning.
+     */
+    public void setMaxInternedValues(int maxInternedValues) {
+        if (maxInternedValues < 0) {
+            throw new IllegalArgumentException("Max interned values must not be negative: " + maxInternedValues);
+        }
+        this.maxInternedValues = maxInternedValues;
+    }
+
+    private ValueInterner newValueInterner() {
+        return maxInternedValues > 0 ? new ValueInterner(maxInternedValues) : null;
+    }
+
+    private void recordInterning(String operation, ValueInterner interner) {
+        if (interner != null) {
+            metrics.recordInterning(operation, interner.getLookups(), interner.getDistinctValues(), interner.getBytesSaved());
+        }
+    }
+
+    private static void loadPolicyLine(CasbinRule line, Model model, ValueInterner interner){
+        String ptype = line.getPtype();
+        if (ptype == null || ptype.isEmpty()) {
+            return;
+        }
+        Map<String, Assertion> section = model.model.get(ptype.substring(0, 1));
+        Assertion ast = section == null ? null : section.get(ptype);
+        if (ast == null) {
+            return;
+        }
+
+        List<String> rule = policyValues(line, interner);
+        ast.policy.add(rule);
+        ast.policyIndex.put(rule.toString(), ast.policy.size() - 1);
+    }
+
+    /**
+     * setLoadParallelism sets how many partitions of the table loadPolicy reads at the same time,
+     * each on its own pooled connection. The rule tables are split into ranges of id, so that partitions
+     * have about the same size. Rows are parsed by the reading threads, and added to the model by the
+     * calling thread in the order of id, the same order as when the table is read in one query.
+     *
+     * @param loadParallelism the number of partitions read at the same time, 1 by default to read the table in one query.
+     */
+    public void setLoadParallelism(int loadParallelism) {
+        if (loadParallelism <= 0) {
+            throw new IllegalArgumentException("Load parallelism must be positive: " + loadParallelism);
+        }
+        this.loadParallelism = loadParallelism;
+    }
+
+    private static class LoadPartition {
+        final String table;
+        final Long from;
+        final Long to;
+        final boolean orderById;
+
+        LoadPartition(String table, Long from, Long to, boolean orderById) {
+            this.table = table;
+            this.from = from;
+            this.to = to;
+            this.orderById = orderById;
+        }
+    }
+
+    private void loadPartitioned(SqlSessionFactory reader, Model model, Collection<String> tables, ValueInterner interner) {
+        List<LoadPartition> partitions = runInSession(reader, sqlSession -> {
+            CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+            refreshDictionary(casbinRuleDao);
+            return planPartitions(casbinRuleDao, tables);
+        });
+
+        ForkJoinPool pool = new ForkJoinPool(loadParallelism);
+        try {
+            List<Future<Map<String, List<List<String>>>>> results = new ArrayList<>(partitions.size());
+            for (LoadPartition partition : partitions) {
+                results.add(pool.submit(() -> readPartition(reader, partition, interner)));
+            }
+
+            long rows = 0;
+            for (Future<Map<String, List<List<String>>>> result : results) {
+                for (Map.Entry<String, List<List<String>>> entry : result.get().entrySet()) {
+                    addPolicyValues(model, entry.getKey(), entry.getValue());
+                    rows += entry.getValue().size();
+                }
+            }
+            metrics.recordRows("loadPolicy", rows);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CasbinAdapterException("Interrupted while loading the policy", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CasbinAdapterException("Failed to load the policy", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * planPartitions splits the tables into ranges of id, in the order of the tables and ids.
+     * A table without the id column is read in one partition, in the order of the database,
+     * as loadPolicy reads it without parallelism.
+     */
+    private List<LoadPartition> planPartitions(CasbinRuleDao casbinRuleDao, Collection<String> tables) {
+        List<String> ordered = new ArrayList<>(tables);
+        long[] counts = new long[ordered.size()];
+        long total = 0;
+        for (int i = 0; i < ordered.size(); i++) {
+            counts[i] = casbinRuleDao.countRules(ordered.get(i));
+            total += counts[i];
+        }
+
+        long target = Math.max(1, (total + loadParallelism - 1) / loadParallelism);
+        List<LoadPartition> partitions = new ArrayList<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            String table = ordered.get(i);
+            boolean byId = orderById(table);
+            int splits = byId ? (int) Math.min(loadParallelism, (counts[i] + target - 1) / target) : 1;
+            Long from = null;
+            for (int split = 1; split < splits; split++) {
+                Long boundary = dialect.selectIdAtOffset(casbinRuleDao, table, counts[i] * split / splits);
+                // Skip boundaries past the end of a table that shrank since it was counted.
+                if (boundary != null && !boundary.equals(from)) {
+                    partitions.add(new LoadPartition(table, from, boundary, true));
+                    from = boundary;
+                }
+            }
+            partitions.add(new LoadPartition(table, from, null, byId));
+        }
+        return partitions;
+    }
+
+    /**
+     * readPartition reads the rules of the partition, grouped by ptype, in the order of id.
+     */
+    private Map<String, List<List<String>>> readPartition(SqlSessionFactory reader, LoadPartition partition, ValueInterner interner) {
+        Map<String, List<List<String>>> rules = new LinkedHashMap<>();
+        runInSession(reader, sqlSession -> {
+            CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+            List<CasbinRule> deferred = new ArrayList<>();
+            Consumer<CasbinRule> add = line -> rules.computeIfAbsent(line.getPtype(), ptype -> new ArrayList<>())
+                    .add(policyValues(line, interner));
+            casbinRuleDao.streamPartition(partition.table, partition.from, partition.to, partition.orderById, decoding(deferred, add));
+            decodeDeferred(casbinRuleDao, deferred, add);
+            return null;
+        });
+        return rules;
+    }
+
+    private static void addPolicyValues(Model model, String ptype, List<List<String>> rules) {
+        if (ptype == null || ptype.isEmpty()) {
+            return;
+        }
+        Map<String, Assertion> section = model.model.get(ptype.substring(0, 1));
+        Assertion ast = section == null ? null : section.get(ptype);
+        if (ast == null) {
+            return;
+        }
+
+        for (List<String> rule : rules) {
+            ast.policy.add(rule);
+            ast.policyIndex.put(rule.toString(), ast.policy.size() - 1);
+        }
+    }
+
+    static List<String> policyValues(CasbinRule line) {
+        return policyValues(line, null);
+    }
+
+    private static List<String> policyValues(CasbinRule line, ValueInterner interner) {
+        String[] values = {line.getV0(), line.getV1(), line.getV2(), line.getV3(), line.getV4(), line.getV5()};
+        int size = 0;
+        for (String value : values) {
+            if (value != null) {
+                size++;
+            }
+        }
+        List<String> rule = new ArrayList<>(size);
+        for (String value : values) {
+            if (value != null) {
+                String trimmed = value.trim();
+                rule.add(interner == null ? trimmed : interner.intern(trimmed));
+            }
+        }
+        return rule;
+    }
+
+
+    /**
+     * setBatchSize sets how many rows are sent to the database in one JDBC batch.
+     *
+     * @param batchSize the batch size, 1000 by default.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * setDeadlockRetries sets how many times a transaction is run again when the database rolled it back
+     * to break a deadlock or a lock wait, see Dialect.isRetryable(). The retries wait for an exponential
+     * backoff with jitter, starting at 10 milliseconds, so the transactions that collided don't collide again.
+     *
+     * @param deadlockRetries the maximum retries, 3 by default, or 0 to fail on the first deadlock.
+     */
+    public void setDeadlockRetries(int deadlockRetries) {
+        if (deadlockRetries < 0) {
+            throw new IllegalArgumentException("Deadlock retries must not be negative: " + deadlockRetries);
+        }
+        this.deadlockRetries = deadlockRetries;
+    }
+
+    /**
+     * setMaxRowsPerStatement sets how many rows are written by one multi-row INSERT statement.
+     * By default it is derived from the driver, like 299 for SQL Server because of its
+     * 2100 parameters limit, and 1 for Oracle, which doesn't support multi-row VALUES.
+     *
+     * @param maxRowsPerStatement the maximum rows per statement, or 0 to use the driver default.
+     */
+    public void setMaxRowsPerStatement(int maxRowsPerStatement) {
+        if (maxRowsPerStatement < 0) {
+            throw new IllegalArgumentException("Max rows per statement must not be negative: " + maxRowsPerStatement);
+        }
+        this.maxRowsPerStatement = maxRowsPerStatement;
+    }
+
+    /**
+     * setDiffSave sets whether savePolicy only writes the difference between the model and the storage.
+     * When enabled, savePolicy reads the stored rules first, then deletes the rules that are not in
+     * the model and inserts the rules that are not in the storage, instead of rewriting the whole table.
+     *
+     * @param diffSave whether to enable diff save.
+     */
+    public void setDiffSave(boolean diffSave) {
+        this.diffSave = diffSave;
+    }
+
+    /**
+     * setChangeLog sets whether every change is also recorded in the casbin_rule_log table,
+     * in the same transaction as the change itself. The log lets other nodes catch up with
+     * loadIncrementalPolicy() instead of reloading the whole policy.
+     *
+     * @param changeLog whether to enable the change log.
+     */
+    public void setChangeLog(boolean changeLog) {
+        if (changeLog && !this.changeLog) {
+            createChangeLogTable();
+        }
+        this.changeLog = changeLog;
+    }
+
+    /**
+     * setChangeLogWindow sets how many revisions a change log entry may be written before the entries
+     * written after it are committed. Revisions are assigned when an entry is written, so with concurrent
+     * writers a lower revision may become visible after a higher one. The watermark returned by
+     * loadIncrementalPolicy() stays below a missing revision until the window has passed it,
+     * so the change is still read once it is committed.
+     *
+     * @param changeLogWindow the window in revisions, 1000 by default, or 0 to not wait for missing revisions.
+     */
+    public void setChangeLogWindow(int changeLogWindow) {
+        if (changeLogWindow < 0) {
+            throw new IllegalArgumentException("Change log window must not be negative: " + changeLogWindow);
+        }
+        this.changeLogWindow = changeLogWindow;
+    }
+
+    /**
+     * setMetrics sets where the adapter reports its timings, row counts, batch sizes and errors,
+     * like JmxAdapterMetrics or MicrometerAdapterMetrics. The connection pool built by the adapter
+     * is bound to it as well. With the default AdapterMetrics.NOOP nothing is measured.
+     *
+     * @param metrics the metrics, or null to disable them.
+     */
+    public void setMetrics(AdapterMetrics metrics) {
+        this.metrics = metrics == null ? AdapterMetrics.NOOP : metrics;
+        if (pooledDataSource != null) {
+            this.metrics.bindConnectionPool(pooledDataSource);
+        }
+    }
+
+    /**
+     * setWriteBehind enables the write-behind mode, in which addPolicy() and removePolicy() only queue
+     * the change, and the queue is written with batched deletes and inserts in a single transaction.
+     * Adding and then removing the same rule before the queue is written cancels out.
+     * Any other operation, like loadPolicy() or addPolicies(), writes the queue first.
+     *
+     * With waitForCommit, addPolicy() and removePolicy() return once their change has been committed,
+     * and concurrent calls are committed together (group commit), so no change is lost.
+     * Without it they return immediately, the queue is written when it has maxPending rules or every
+     * maxDelayMillis, and the changes still queued are lost if the process dies. A failure of a
+     * background write is thrown by the next flush().
+     *
+     * @param maxPending the number of queued rules that triggers a write, or 0 to disable write-behind.
+     * @param maxDelayMillis the maximum time in milliseconds a change stays queued, or 0 to only write on size or flush().
+     * @param waitForCommit whether addPolicy() and removePolicy() wait for their change to be committed.
+     */
+    public synchronized void setWriteBehind(int maxPending, long maxDelayMillis, boolean waitForCommit) {
+        WriteBehindBuffer buffer = writeBehind;
+        if (buffer != null) {
+            writeBehind = null;
+            buffer.close();
+        }
+        if (maxPending > 0) {
+            writeBehind = new WriteBehindBuffer(maxPending, maxDelayMillis, waitForCommit, this::writeBuffered);
+        }
+    }
+
+    /**
+     * flush writes the changes queued in write-behind mode, see setWriteBehind().
+     */
+    public void flush() {
+        flushPending();
+    }
+
+    private void flushPending() {
+        WriteBehindBuffer buffer = writeBehind;
+        if (buffer != null) {
+            buffer.flush();
+        }
+    }
+
+    private void writeBuffered(List<CasbinRule> removed, List<CasbinRule> added) {
+        Map<String, String> tables = new HashMap<>();
+        for (CasbinRule line : removed) {
+            tables.computeIfAbsent(line.getPtype(), this::ruleTable);
+        }
+        for (CasbinRule line : added) {
+            tables.computeIfAbsent(line.getPtype(), this::ruleTable);
+        }
+        // Rules of the same table and size share the same SQL, see removeRules(),
+        // and are deleted in key order, see KEY_ORDER.
+        Comparator<CasbinRule> byTable = Comparator.comparing(line -> tables.get(line.getPtype()));
+        removed.sort(byTable.thenComparingInt(line -> policyValues(line).size()).thenComparing(KEY_ORDER));
+        added.sort(byTable);
+        lookupValues(removed.iterator());
+        addValues(added.iterator());
+        measure("flush", () -> runInTransaction(sqlSession -> {
+            CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+            for (int i = 0; i < removed.size(); i++) {
+                CasbinRule line = removed.get(i);
+                casbinRuleDao.deleteMatchedData(tables.get(line.getPtype()), encode(line));
+                if ((i + 1) % batchSize == 0) {
+                    sqlSession.flushStatements();
+                }
+            }
+            sqlSession.flushStatements();
+
+            BatchInserter inserter = newBatchInserter(sqlSession);
+            for (CasbinRule line : added) {
+                inserter.add(tables.get(line.getPtype()), encode(line));
+            }
+            inserter.finish();
+            logChanges(sqlSession, CasbinRuleLog.OP_REMOVE, removed);
+            logChanges(sqlSession, CasbinRuleLog.OP_ADD, added);
+            metrics.recordRows("flush", removed.size() + added.size());
+            return null;
+        }));
+    }
+
+    /**
+     * setAsyncExecutor sets where the async methods, like addPolicyAsync(), run and how many of them
+     * may be in flight at the same time. When the limit is reached, the calling thread waits until
+     * an operation completes, so a burst of writes can't queue up more work than the pool can serve.
+     *
+     * @param executor the executor, or null to use virtual threads on Java 21 and later,
+     * and a fixed thread pool otherwise.
+     * @param maxInFlight the maximum number of operations in flight, or 0 to use the
+     * maximum active connections of the adapter's own pool, 10 if it has none.
+     */
+    public synchronized void setAsyncExecutor(Executor executor, int maxInFlight) {
+        if (maxInFlight < 0) {
+            throw new IllegalArgumentException("Max in-flight operations must not be negative: " + maxInFlight);
+        }
+        if (asyncRunner != null) {
+            asyncRunner.close();
+        }
+        asyncRunner = new AsyncRunner(executor, maxInFlight > 0 ? maxInFlight : getDefaultMaxInFlight());
+    }
+
+    private synchronized AsyncRunner getAsyncRunner() {
+        if (asyncRunner == null) {
+            asyncRunner = new AsyncRunner(null, getDefaultMaxInFlight());
+        }
+        return asyncRunner;
+    }
+
+    private int getDefaultMaxInFlight() {
+        return pooledDataSource != null ? pooledDataSource.getPoolMaximumActiveConnections() : 10;
+    }
+
+    /**
+     * getCurrentRevision returns the watermark of the change log, the latest revision below which
+     * no revision is missing, see setChangeLogWindow(), or 0 if the log is empty.
+     * Read it before loadPolicy() to get the watermark for the next loadIncrementalPolicy().
+     * That call may replay changes the loaded policy already has, which leaves the same rules.
+     *
+     * @return the watermark.
+     */
+    public long getCurrentRevision() {
+        requireChangeLog();
+        flushPending();
+        return measure("getCurrentRevision", () -> runInSession(sqlSession -> {
+            CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+            long since = Math.max(0, casbinRuleDao.selectMaxRevision(logTable()) - changeLogWindow);
+            List<CasbinRuleLog> changes = new ArrayList<>();
+            casbinRuleDao.streamLog(logTable(), since, context -> changes.add(context.getResultObject()));
+            return watermark(since, changes);
+        }));
+    }
+
+    /**
+     * loadIncrementalPolicy applies the changes recorded after sinceRevision to the model, in revision order.
+     * If the policy has been saved as a whole since then, the model is reloaded instead.
+     * Call enforcer.buildRoleLinks() afterwards if grouping rules may have changed.
+     *
+     * Revisions are assigned when a change is written, so with concurrent writers a change may
+     * become visible after a higher revision. The returned watermark stays below such a missing
+     * revision, see setChangeLogWindow(), so the next call reads it once it is committed.
+     * The changes above the watermark that were already applied to the model are remembered,
+     * and skipped by the next call if it is passed that watermark.
+     *
+     * @param model the model.
+     * @param sinceRevision the watermark the model is up to date with.
+     * @return the new watermark, to be passed to the next call.
+     */
+    public long loadIncrementalPolicy(Model model, long sinceRevision) {
+        requireChangeLog();
+        flushPending();
+        return measure("loadIncrementalPolicy", () -> {
+            List<CasbinRuleLog> changes = new ArrayList<>();
+            runInSession(sqlSession -> {
+                sqlSession.getMapper(CasbinRuleDao.class).streamLog(logTable(), sinceRevision, context -> changes.add(context.getResultObject()));
+                return null;
+            });
+            metrics.recordRows("loadIncrementalPolicy", changes.size());
+            if (changes.isEmpty()) {
+                return sinceRevision;
+            }
+
+            AppliedChanges applied = appliedChanges.get(model);
+            Set<Long> skipped = applied != null && applied.watermark == sinceRevision ? applied.revisions : Collections.emptySet();
+            List<CasbinRuleLog> pending = changes.stream()
+                    .filter(change -> !skipped.contains(change.getRevision()))
+                    .collect(Collectors.toList());
+            if (pending.stream().anyMatch(change -> CasbinRuleLog.OP_SAVE.equals(change.getOp()))) {
+                // The loaded policy has all the changes read, and maybe later ones, which the next call replays.
+                model.clearPolicy();
+                loadAll(model);
+            } else {
+                for (CasbinRuleLog change : pending) {
+                    applyChange(model, change);
+                }
+            }
+
+            long watermark = watermark(sinceRevision, changes);
+            Set<Long> revisions = new HashSet<>();
+            for (CasbinRuleLog change : changes) {
+                if (change.getRevision() > watermark) {
+                    revisions.add(change.getRevision());
+                }
+            }
+            appliedChanges.put(model, new AppliedChanges(watermark, revisions));
+            return watermark;
+        });
+    }
+
+    /**
+     * watermark returns the latest revision of changes below which no revision is missing,
+     * except the ones more than changeLogWindow revisions older than the latest change,
+     * which are assumed rolled back or skipped by the database.
+     *
+     * @param sinceRevision the watermark changes were read after.
+     * @param changes the changes recorded after sinceRevision, in revision order.
+     */
+    private long watermark(long sinceRevision, List<CasbinRuleLog> changes) {
+        if (changes.isEmpty()) {
+            return sinceRevision;
+        }
+        long watermark = Math.max(sinceRevision, changes.get(changes.size() - 1).getRevision() - changeLogWindow);
+        for (CasbinRuleLog change : changes) {
+            if (change.getRevision() > watermark + 1) {
+                break;
+            }
+            watermark = Math.max(watermark, change.getRevision());
+        }
+        return watermark;
+    }
+
+    /**
+     * pruneChangeLog deletes the change log entries up to the revision,
+     * once every node has caught up with it.
+     *
+     * @param revision the last revision to delete.
+     * @return the number of deleted entries.
+     */
+    public int pruneChangeLog(long revision) {
+        requireChangeLog();
+        return measure("pruneChangeLog", () ->
+                runInSession(sqlSession -> sqlSession.getMapper(CasbinRuleDao.class).deleteLogUpTo(logTable(), revision)));
+    }
+
+    private static void applyChange(Model model, CasbinRuleLog change) {
+        String ptype = change.getPtype();
+        String sec = ptype.substring(0, 1);
+        Map<String, Assertion> section = model.model.get(sec);
+        if (section == null || !section.containsKey(ptype)) {
+            return;
+        }
+
+        List<String> values = policyValues(change.toCasbinRule());
+        switch (change.getOp()) {
+            case CasbinRuleLog.OP_ADD:
+                model.addPolicy(sec, ptype, values);
+                break;
+            case CasbinRuleLog.OP_REMOVE:
+                model.removePolicy(sec, ptype, values);
+                break;
+            case CasbinRuleLog.OP_REMOVE_FILTERED:
+                model.removeFilteredPolicy(sec, ptype, change.getFieldIndex(), values.toArray(new String[0]));
+                break;
+        }
+    }
+
+    /**
+     * AppliedChanges are the revisions above a watermark already applied to a model.
+     */
+    private static class AppliedChanges {
+        final long watermark;
+        final Set<Long> revisions;
+
+        AppliedChanges(long watermark, Set<Long> revisions) {
+            this.watermark = watermark;
+            this.revisions = revisions;
+        }
+    }
+
+    private void requireChangeLog() {
+        if (!changeLog) {
+            throw new IllegalStateException("The change log is not enabled");
+        }
+    }
+
+    private void logChange(CasbinRuleDao casbinRuleDao, String op, int fieldIndex, CasbinRule line) {
+        if (changeLog) {
+            casbinRuleDao.insertLog(logTable(), op, fieldIndex, line);
+        }
+    }
+
+    private void logChanges(SqlSession sqlSession, String op, Collection<CasbinRule> lines) {
+        if (!changeLog) {
+            return;
+        }
+        CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+        int count = 0;
+        for (CasbinRule line : lines) {
+            casbinRuleDao.insertLog(logTable(), op, 0, line);
+            if (++count % batchSize == 0) {
+                sqlSession.flushStatements();
+            }
+        }
+    }
+
+    /**
+     * savePolicy saves all policy rules to the storage.
+     * All changes are written with JDBC batches in a single transaction,
+     * so readers never see a partially saved policy.
+     * With a table per section or ptype, the tables of the model's ptypes and the tables
+     * this adapter has used before are rewritten.
+     */
+    @Override
+    public void savePolicy(Model model) {
+        flushPending();
+        Path snapshot = snapshotFile;
+        Map<String, String> tables = ruleTables(model);
+        List<String> cleared = knownRuleTables();
+        addValues(modelRules(model, new ArrayList<>(tables.keySet())));
+        if (bulkSave) {
+            long revision = measure("savePolicy", () -> bulkSave(model, tables, cleared));
+            if (snapshot != null) {
+                writeSnapshot(snapshot, revision, model);
+            }
+            return;
+        }
+        long revision = measure("savePolicy", () -> runInTransaction(sqlSession -> {
+            CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+            if (diffSave) {
+                saveDiff(sqlSession, casbinRuleDao, model, tables, cleared);
+            } else {
+                for (String table : cleared) {
+                    casbinRuleDao.deleteAll(table);
+                }
+                BatchInserter inserter = newBatchInserter(sqlSession);
+                forEachModelRule(model, line -> inserter.add(tables.get(line.getPtype()), encode(line)));
+                inserter.finish();
+                logChange(casbinRuleDao, CasbinRuleLog.OP_SAVE, 0, new CasbinRule());
+                metrics.recordRows("savePolicy", inserter.getRows());
+            }
+            // The revision row is already locked by this transaction, so this is the revision it commits.
+            return snapshot != null ? casbinRuleDao.selectRevision(revisionTable()) : 0L;
+        }));
+        if (snapshot != null) {
+            writeSnapshot(snapshot, revision, model);
+        }
+    }
+
+    private void saveDiff(SqlSession sqlSession, CasbinRuleDao casbinRuleDao, Model model,
+                          Map<String, String> tables, List<String> storedTables) {
+        Map<List<String>, String> stored = new HashMap<>();
+        List<CasbinRule> deferred = new ArrayList<>();
+        for (String table : storedTables) {
+            Consumer<CasbinRule> store = line -> stored.put(ruleKey(line), table);
+            casbinRuleDao.streamAll(table, orderById(table), decoding(deferred, store));
+            decodeDeferred(casbinRuleDao, deferred, store);
+        }
+
+        Map<List<String>, CasbinRule> wanted = new LinkedHashMap<>();
+        forEachModelRule(model, line -> wanted.put(ruleKey(line), line));
+
+        List<CasbinRule> removed = new ArrayList<>();
+        for (List<String> key : stored.keySet()) {
+            if (!wanted.containsKey(key)) {
+                removed.add(new CasbinRule(key.get(0), key.get(1), key.get(2), key.get(3), key.get(4), key.get(5), key.get(6)));
+            }
+        }
+        removed.sort(KEY_ORDER);
+        for (int i = 0; i < removed.size(); i++) {
+            CasbinRule line = removed.get(i);
+            casbinRuleDao.deleteExactData(stored.get(ruleKey(line)), encode(line));
+            if ((i + 1) % batchSize == 0) {
+                sqlSession.flushStatements();
+            }
+        }
+        sqlSession.flushStatements();
+
+        List<CasbinRule> added = new ArrayList<>();
+        BatchInserter inserter = newBatchInserter(sqlSession);
+        for (Map.Entry<List<String>, CasbinRule> entry : wanted.entrySet()) {
+            if (!stored.containsKey(entry.getKey())) {
+                inserter.add(tables.get(entry.getValue().getPtype()), encode(entry.getValue()));
+                added.add(entry.getValue());
+            }
+        }
+        inserter.finish();
+        metrics.recordRows("savePolicy", removed.size() + added.size());
+
+        logChanges(sqlSession, CasbinRuleLog.OP_REMOVE, removed);
+        logChanges(sqlSession, CasbinRuleLog.OP_ADD, added);
+    }
+
+    /**
+     * setDedup sets whether the rule tables hold each rule at most once. When enabled, the tables get a unique index
+     * over (ptype, v0..v5), see Dialect.createUniqueIndex(), and rules are written with the upsert of the database,
+     * so adding a rule that is already stored does nothing. Duplicates stored before are removed when the index is created.
+     *
+     * @param dedup whether to enable the dedup mode.
+     */
+    public void setDedup(boolean dedup) {
+        if (dedup && !this.dedup) {
+            for (Map.Entry<String, String> entry : ruleTables.entrySet()) {
+                migrate("uk_" + entry.getValue(), TABLE_VERSION, from -> createUniqueIndex(entry.getKey(), entry.getValue()));
+            }
+        }
+        this.dedup = dedup;
+    }
+
+    /**
+     * setBulkSave sets whether savePolicy writes the policy with the native bulk import of the database
+     * into staging tables, which then replace the rule tables, instead of batched INSERT statements.
+     * See Dialect.bulkInsert() and Dialect.replaceTables() for what each database uses.
+     * Diff save is ignored when bulk save is enabled.
+     *
+     * @param bulkSave whether to enable bulk save.
+     */
+    public void setBulkSave(boolean bulkSave) {
+        this.bulkSave = bulkSave;
+    }
+
+    private long bulkSave(Model model, Map<String, String> tables, List<String> replaced) {
+        List<TableSwap> swaps = new ArrayList<>(replaced.size());
+        for (String table : replaced) {
+            swaps.add(new TableSwap(schema, ruleTables.get(table), dedup));
+        }
+        long rows = 0;
+        try {
+            for (TableSwap swap : swaps) {
+                List<String> ptypes = new ArrayList<>();
+                for (Map.Entry<String, String> entry : tables.entrySet()) {
+                    if (entry.getValue().equals(swap.getTable())) {
+                        ptypes.add(entry.getKey());
+                    }
+                }
+                rows += runInSession(sqlSession -> {
+                    CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+                    // Leftovers of an interrupted bulk save.
+                    dialect.dropTable(casbinRuleDao, swap.getOldTable(), swap.getOldBaseName());
+                    dialect.dropTable(casbinRuleDao, swap.getStagingTable(), swap.getStagingBaseName());
+                    createRuleTable(casbinRuleDao, swap.getStagingTable(), swap.getStagingBaseName());
+                    if (dedup) {
+                        dialect.createUniqueIndex(casbinRuleDao, swap.getStagingTable(), swap.getStagingBaseName());
+                    }
+                    try {
+                        Iterator<CasbinRule> rules = modelRules(model, ptypes);
+                        return dialect.bulkInsert(sqlSession.getConnection(), swap.getStagingTable(),
+                                dictionary == null ? rules : dictionary.encode(rules), batchSize);
+                    } catch (SQLException e) {
+                        throw new CasbinAdapterException("Failed to bulk load " + swap.getStagingTable(), e);
+                    }
+                });
+            }
+        } catch (RuntimeException e) {
+            dropStagingTables(swaps, e);
+            throw e;
+        }
+
+        SqlSession sqlSession = factory.openSession(false);
+        try {
+            dialect.replaceTables(sqlSession.getMapper(CasbinRuleDao.class), swaps);
+            sqlSession.commit(true);
+            markWritten();
+        } finally {
+            sqlSession.close();
+        }
+        if (!dedup) {
+            // The staging tables had no unique index, so the tables don't have it anymore.
+            for (TableSwap swap : swaps) {
+                forgetSchemaVersion("uk_" + swap.getBaseName());
+            }
+        }
+        metrics.recordRows("savePolicy", rows);
+
+        if (!changeLog && !tracksRevision()) {
+            return 0L;
+        }
+        // The revision is only incremented once the new tables are visible, so no snapshot
+        // of the old tables can be taken at the new revision.
+        return runInTransaction(session -> {
+            CasbinRuleDao casbinRuleDao = session.getMapper(CasbinRuleDao.class);
+            logChange(casbinRuleDao, CasbinRuleLog.OP_SAVE, 0, new CasbinRule());
+            return snapshotFile != null ? casbinRuleDao.selectRevision(revisionTable()) : 0L;
+        });
+    }
+
+    private void dropStagingTables(List<TableSwap> swaps, RuntimeException cause) {
+        try {
+            runInSession(sqlSession -> {
+                CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+                for (TableSwap swap : swaps) {
+                    dialect.dropTable(casbinRuleDao, swap.getStagingTable(), swap.getStagingBaseName());
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * modelRules returns the rules of the ptypes, converted one at a time as they are read.
+     */
+    private Iterator<CasbinRule> modelRules(Model model, List<String> ptypes) {
+        return new Iterator<CasbinRule>() {
+            private int ptype = -1;
+            private Iterator<List<String>> rules = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!rules.hasNext() && ptype + 1 < ptypes.size()) {
+                    String next = ptypes.get(++ptype);
+                    rules = model.model.get(next.substring(0, 1)).get(next).policy.iterator();
+                }
+                return rules.hasNext();
+            }
+
+            @Override
+            public CasbinRule next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return savePolicyLine(ptypes.get(ptype), rules.next());
+            }
+        };
+    }
+
+    private BatchInserter newBatchInserter(SqlSession sqlSession) {
+        return new BatchInserter(sqlSession, getMaxRowsPerStatement(), batchSize, metrics, dedup ? dialect : null);
+    }
+
+    /**
+     * encode returns the line with the dictionary ids of its values in the dictionary storage, and the line itself otherwise.
+     */
+    private CasbinRule encode(CasbinRule line) {
+        return dictionary == null || line == null ? line : dictionary.encode(line);
+    }
+
+    private List<CasbinRule> encode(List<CasbinRule> lines) {
+        if (dictionary == null) {
+            return lines;
+        }
+        List<CasbinRule> encoded = new ArrayList<>(lines.size());
+        for (CasbinRule line : lines) {
+            encoded.add(encode(line));
+        }
+        return encoded;
+    }
+
+    /**
+     * addValues adds the values of the lines that are missing from the dictionary, before the lines are written.
+     * The entries are committed on their own, so the ids cached by the dictionary stay valid if the write is rolled back.
+     */
+    private void addValues(Iterator<CasbinRule> lines) {
+        if (dictionary != null) {
+            runInSession(sqlSession -> {
+                dictionary.resolve(sqlSession.getMapper(CasbinRuleDao.class), lines, getMaxRowsPerStatement());
+                return null;
+            });
+        }
+    }
+
+    /**
+     * lookupValues reads the dictionary ids of the values of the lines, before the lines are matched.
+     */
+    private void lookupValues(Iterator<CasbinRule> lines) {
+        if (dictionary != null) {
+            runInSession(sqlSession -> {
+                dictionary.lookup(sqlSession.getMapper(CasbinRuleDao.class), lines);
+                return null;
+            });
+        }
+    }
+
+    private String dictionaryTable() {
+        return dictionary == null ? null : dictionary.getTable();
+    }
+
+    private void refreshDictionary(CasbinRuleDao casbinRuleDao) {
+        if (dictionary != null) {
+            dictionary.refresh(casbinRuleDao, false);
+        }
+    }
+
+    /**
+     * decoding returns a handler passing the rows to the action, decoded in the dictionary storage.
+     * Rows with ids the dictionary doesn't know yet are kept in deferred, see decodeDeferred().
+     */
+    private ResultHandler<CasbinRule> decoding(List<CasbinRule> deferred, Consumer<CasbinRule> action) {
+        if (dictionary == null) {
+            return context -> action.accept(context.getResultObject());
+        }
+        return context -> {
+            CasbinRule line = dictionary.decode(context.getResultObject());
+            if (line == null) {
+                deferred.add(context.getResultObject());
+            } else {
+                action.accept(line);
+            }
+        };
+    }
+
+    /**
+     * decodeDeferred reads the whole dictionary again, once the rows have been read, and decodes the deferred rows.
+     * Their dictionary entries were committed before them, so they are read by then.
+     */
+    private void decodeDeferred(CasbinRuleDao casbinRuleDao, List<CasbinRule> deferred, Consumer<CasbinRule> action) {
+        if (deferred.isEmpty()) {
+            return;
+        }
+        dictionary.refresh(casbinRuleDao, true);
+        for (CasbinRule encoded : deferred) {
+            CasbinRule line = dictionary.decode(encoded);
+            if (line == null) {
+                throw new CasbinAdapterException("Unknown dictionary id in " + encoded);
+            }
+            action.accept(line);
+        }
+        deferred.clear();
+    }
+
+    private void insertRule(CasbinRuleDao casbinRuleDao, String table, CasbinRule line) {
+        if (dedup) {
+            dialect.upsertRules(casbinRuleDao, table, Collections.singletonList(line));
+        } else {
+            casbinRuleDao.insertData(table, line);
+        }
+    }
+
+    private int getMaxRowsPerStatement() {
+        if (maxRowsPerStatement > 0) {
+            return maxRowsPerStatement;
+        }
+        return dialect.getMaxRowsPerStatement();
+    }
+
+    private void forEachModelRule(Model model, Consumer<CasbinRule> action) {
+        for (String sec : new String[]{"p", "g"}) {
+            Map<String, Assertion> section = model.model.get(sec);
+            if (section == null) {
+                continue;
+            }
+            for (Map.Entry<String, Assertion> entry : section.entrySet()) {
+                String ptype = entry.getKey();
+                Assertion ast = entry.getValue();
+
+                for (List<String> rule : ast.policy) {
+                    action.accept(savePolicyLine(ptype, rule));
+                }
+            }
+        }
+    }
+
+    /**
+     * KEY_ORDER is the order in which batches delete rules. Concurrent batches then lock the rows they share
+     * in the same order, so they wait for each other instead of deadlocking. Inserts keep the order of the
+     * caller, which is the order of the policy, and updates too, since each one may change the rows of the next.
+     */
+    static final Comparator<CasbinRule> KEY_ORDER = Comparator.comparing(CasbinRule::getPtype, VALUE_ORDER)
+            .thenComparing(CasbinRule::getV0, VALUE_ORDER)
+            .thenComparing(CasbinRule::getV1, VALUE_ORDER)
+            .thenComparing(CasbinRule::getV2, VALUE_ORDER)
+            .thenComparing(CasbinRule::getV3, VALUE_ORDER)
+            .thenComparing(CasbinRule::getV4, VALUE_ORDER)
+            .thenComparing(CasbinRule::getV5, VALUE_ORDER);
+
+    static List<String> ruleKey(CasbinRule line) {
+        return Arrays.asList(line.getPtype(), line.getV0(), line.getV1(), line.getV2(), line.getV3(), line.getV4(), line.getV5());
+    }
+
+    /**
+     * runInTransaction runs the action in a transaction, and runs it again in a new transaction
+     * when the database rolled it back to break a deadlock, see setDeadlockRetries().
+     * The action may run several times, so it must not change anything outside the transaction.
+     */
+    private <T> T runInTransaction(Function<SqlSession, T> action) {
+        return retryDeadlocks(() -> runInTransactionOnce(action));
+    }
+
+    private <T> T retryDeadlocks(Supplier<T> attempt) {
+        for (int retry = 0; ; retry++) {
+            try {
+                return attempt.get();
+            } catch (PersistenceException e) {
+                if (retry >= deadlockRetries || !isRetryable(e)) {
+                    throw e;
+                }
+                long backoff = RETRY_BACKOFF_MILLIS << Math.min(retry, 10);
+                try {
+                    Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff + 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private boolean isRetryable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                // Batches report the error of each statement in the chain of the BatchUpdateException.
+                for (SQLException next = (SQLException) cause; next != null; next = next.getNextException()) {
+                    if (dialect.isRetryable(next)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private <T> T runInTransactionOnce(Function<SqlSession, T> action) {
+        long start = metrics == AdapterMetrics.NOOP ? 0 : System.nanoTime();
+        SqlSession sqlSession = factory.openSession(ExecutorType.BATCH, false);
+        try {
+            MybatisWatcher current = watcher;
+            if (tracksRevision()) {
+                // Every write goes through here, so this invalidates the snapshots taken before it.
+                // Locking the revision row first also gives all writers the same lock order.
+                sqlSession.getMapper(CasbinRuleDao.class).incrementRevision(revisionTable());
+                // Sent right away, so the lock is taken first and the action only flushes its own statements.
+                sqlSession.flushStatements();
+            }
+            T result = action.apply(sqlSession);
+            long revision = current != null ? sqlSession.getMapper(CasbinRuleDao.class).selectRevision(revisionTable()) : 0L;
+            if (current != null) {
+                current.recordOwnRevision(revision);
+            }
+            try {
+                sqlSession.commit(true);
+            } catch (RuntimeException e) {
+                if (current != null) {
+                    // Forgotten before the rollback releases the revision row to the other nodes.
+                    current.forgetOwnRevision(revision);
+                }
+                throw e;
+            }
+            markWritten();
+            return result;
+        } catch (RuntimeException e) {
+            sqlSession.rollback(true);
+            throw e;
+        } finally {
+            sqlSession.close();
+            if (start != 0) {
+                metrics.recordSession(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private <T> T runInSession(Function<SqlSession, T> action) {
+        return runInSession(factory, action);
+    }
+
+    private <T> T runInSession(SqlSessionFactory factory, Function<SqlSession, T> action) {
+        long start = metrics == AdapterMetrics.NOOP ? 0 : System.nanoTime();
+        SqlSession sqlSession = factory.openSession(true);
+        try {
+            return action.apply(sqlSession);
+        } finally {
+            sqlSession.close();
+            if (start != 0) {
+                metrics.recordSession(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private void measure(String operation, Runnable action) {
+        measure(operation, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <T> T measure(String operation, Supplier<T> action) {
+        AdapterMetrics metrics = this.metrics;
+        if (metrics == AdapterMetrics.NOOP) {
+            return action.get();
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = action.get();
+            failed = false;
+            return result;
+        } finally {
+            metrics.recordOperation(operation, System.nanoTime() - start, failed);
+        }
+    }
+
+    private CasbinRule savePolicyLine(String ptype, List<String> rule) {
+        CasbinRule line = new CasbinRule();
+
+        line.setPtype(ptype);
+        if (rule.size() > 0) {
+            line.setV0(rule.get(0));
+        }
+        if (rule.size() > 1) {
+            line.setV1(rule.get(1));
+        }
+        if (rule.size() > 2) {
+            line.setV2(rule.get(2));
+        }
+        if (rule.size() > 3) {
+            line.setV3(rule.get(3));
+        }
+        if (rule.size() > 4) {
+            line.setV4(rule.get(4));
+        }
+        if (rule.size() > 5) {
+            line.setV5(rule.get(5));
+        }
+
+        return line;
+    }
+
+
+    /**
+     * addPolicy adds a policy rule to the storage.
+     */
+    @Override
+    public void addPolicy(String sec, String ptype, List<String> rule) {
+        if(CollectionUtils.isEmpty(rule)) return;
+        CasbinRule line = savePolicyLine(ptype, rule);
+
+        WriteBehindBuffer buffer = writeBehind;
+        if (buffer != null) {
+            measure("addPolicy", () -> buffer.add(line));
+            return;
+        }
+        measure("addPolicy", () -> {
+            String table = ruleTable(ptype);
+            addValues(Collections.singletonList(line).iterator());
+            if (changeLog || tracksRevision()) {
+                runInTransaction(sqlSession -> {
+                    CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+                    insertRule(casbinRuleDao, table, encode(line));
+                    logChange(casbinRuleDao, CasbinRuleLog.OP_ADD, 0, line);
+                    return null;
+                });
+            } else {
+                retryDeadlocks(() -> runInSession(sqlSession -> {
+                    insertRule(sqlSession.getMapper(CasbinRuleDao.class), table, encode(line));
+                    return null;
+                }));
+                markWritten();
+            }
+            metrics.recordRows("addPolicy", 1);
+        });
+    }
+
+
+    /**
+     * addPolicies adds policy rules to the storage.
+     * The rules are written with chunked multi-row INSERT statements in a single transaction.
+     *
+     * @param sec   the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param rules the policy rules.
+     */
+    @Override
+    public void addPolicies(String sec, String ptype, List<List<String>> rules) {
+        if(CollectionUtils.isEmpty(rules)) {
+            return;
+        }
+        List<CasbinRule> casbinRules = rules.stream()
+                .map(rule -> savePolicyLine(ptype, rule))
+                .distinct()
+                .collect(Collectors.toList());
+
+        flushPending();
+        String table = ruleTable(ptype);
+        addValues(casbinRules.iterator());
+        measure("addPolicies", () -> runInTransaction(sqlSession -> {
+            BatchInserter inserter = newBatchInserter(sqlSession);
+            inserter.addAll(table, encode(casbinRules));
+            inserter.finish();
+            logChanges(sqlSession, CasbinRuleLog.OP_ADD, casbinRules);
+            metrics.recordRows("addPolicies", casbinRules.size());
+            return null;
+        }));
+    }
+
+
+    /**
+     * removePolicy removes a policy rule from the storage.
+     */
+    @Override
+    public void removePolicy(String sec, String ptype, List<String> rule) {
+        if(CollectionUtils.isEmpty(rule)) return;
+        WriteBehindBuffer buffer = writeBehind;
+        if (buffer != null) {
+            CasbinRule line = savePolicyLine(ptype, rule);
+            measure("removePolicy", () -> buffer.remove(line));
+            return;
+        }
+        measure("removePolicy", () -> removeRules("removePolicy", ptype, Collections.singletonList(rule)));
+    }
+
+    /**
+     * removePolicies removes some policy rules from the storage.
+     *
+     * @param sec   the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param rules the policy rules.
+     */
+    @Override
+    public void removePolicies(String sec, String ptype, List<List<String>> rules) {
+        measure("removePolicies", () -> removeRules("removePolicies", ptype, rules));
+    }
+
+    /**
+     * removePoliciesWithCounts removes some policy rules from the storage,
+     * with JDBC batches in a single transaction.
+     *
+     * @param sec   the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param rules the policy rules.
+     * @return the number of rows deleted for each rule, in the order of rules.
+     * Drivers that do not report batch counts return Statement.SUCCESS_NO_INFO instead.
+     */
+    public int[] removePoliciesWithCounts(String sec, String ptype, List<List<String>> rules) {
+        return measure("removePoliciesWithCounts", () -> removeRules("removePoliciesWithCounts", ptype, rules));
+    }
+
+    private int[] removeRules(String operation, String ptype, List<List<String>> rules) {
+        flushPending();
+        if (CollectionUtils.isEmpty(rules)) {
+            return new int[0];
+        }
+        List<CasbinRule> lines = new ArrayList<>(rules.size());
+        boolean any = false;
+        for (List<String> rule : rules) {
+            boolean empty = CollectionUtils.isEmpty(rule);
+            lines.add(empty ? null : savePolicyLine(ptype, rule));
+            any |= !empty;
+        }
+        if (!any) {
+            return new int[rules.size()];
+        }
+
+        String table = ruleTable(ptype);
+        lookupValues(lines.stream().filter(Objects::nonNull).iterator());
+        return runInTransaction(sqlSession -> {
+            int[] counts = deleteMatchedLines(sqlSession, table, lines);
+            logChanges(sqlSession, CasbinRuleLog.OP_REMOVE, lines.stream().filter(Objects::nonNull).collect(Collectors.toList()));
+            metrics.recordRows(operation, Arrays.stream(counts).filter(count -> count > 0).sum());
+            return counts;
+        });
+    }
+
+    /**
+     * deleteMatchedLines deletes the rows matching each line with JDBC batches, skipping null lines.
+     * The SQL of deleteMatchedData only depends on which fields are set, so lines are sent ordered by
+     * their set fields, and the batch executor reuses one prepared statement for each set of fields.
+     * Lines with the same fields are sent in key order, see KEY_ORDER.
+     *
+     * @return the number of rows deleted for each line, in the order of lines.
+     */
+    private int[] deleteMatchedLines(SqlSession sqlSession, String table, List<CasbinRule> lines) {
+        List<Integer> order = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i) != null) {
+                order.add(i);
+            }
+        }
+        order.sort(Comparator.<Integer>comparingInt(i -> fieldMask(lines.get(i))).thenComparing(lines::get, KEY_ORDER));
+
+        CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+        int[] counts = new int[lines.size()];
+        int flushed = 0;
+        for (int i = 0; i < order.size(); i++) {
+            casbinRuleDao.deleteMatchedData(table, encode(lines.get(order.get(i))));
+            if ((i + 1) % batchSize == 0 || i == order.size() - 1) {
+                for (BatchResult result : sqlSession.flushStatements()) {
+                    for (int count : result.getUpdateCounts()) {
+                        counts[order.get(flushed++)] = count;
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static int fieldMask(CasbinRule line) {
+        String[] values = {line.getV0(), line.getV1(), line.getV2(), line.getV3(), line.getV4(), line.getV5()};
+        int mask = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * updatePolicy updates a policy rule from storage.
+     *
+     * @param sec the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param oldRule the old rule.
+     * @param newPolicy the new rule.
+     */
+    @Override
+    public void updatePolicy(String sec, String ptype, List<String> oldRule, List<String> newPolicy) {
+        measure("updatePolicy", () -> updateRules("updatePolicy", ptype, Collections.singletonList(oldRule), Collections.singletonList(newPolicy)));
+    }
+
+    /**
+     * updatePolicies updates some policy rules in the storage,
+     * with one UPDATE statement per rule sent as JDBC batches in a single transaction.
+     *
+     * @param sec the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param oldRules the old rules.
+     * @param newRules the new rules, in the same order as oldRules.
+     */
+    public void updatePolicies(String sec, String ptype, List<List<String>> oldRules, List<List<String>> newRules) {
+        measure("updatePolicies", () -> updateRules("updatePolicies", ptype, oldRules, newRules));
+    }
+
+    private void updateRules(String operation, String ptype, List<List<String>> oldRules, List<List<String>> newRules) {
+        flushPending();
+        if (oldRules.size() != newRules.size()) {
+            throw new IllegalArgumentException("The number of old rules (" + oldRules.size()
+                    + ") doesn't match the number of new rules (" + newRules.size() + ")");
+        }
+        if (oldRules.isEmpty()) {
+            return;
+        }
+
+        String table = ruleTable(ptype);
+        if (dictionary != null) {
+            lookupValues(oldRules.stream().map(rule -> savePolicyLine(ptype, rule)).iterator());
+            addValues(newRules.stream().map(rule -> savePolicyLine(ptype, rule)).iterator());
+        }
+        runInTransaction(sqlSession -> {
+            CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+            for (int i = 0; i < oldRules.size(); i++) {
+                casbinRuleDao.updateData(table, encode(savePolicyLine(ptype, oldRules.get(i))), encode(savePolicyLine(ptype, newRules.get(i))));
+                if ((i + 1) % batchSize == 0) {
+                    sqlSession.flushStatements();
+                }
+            }
+            if (changeLog) {
+                sqlSession.flushStatements();
+                for (int i = 0; i < oldRules.size(); i++) {
+                    casbinRuleDao.insertLog(logTable(), CasbinRuleLog.OP_REMOVE, 0, savePolicyLine(ptype, oldRules.get(i)));
+                    casbinRuleDao.insertLog(logTable(), CasbinRuleLog.OP_ADD, 0, savePolicyLine(ptype, newRules.get(i)));
+                    if ((i + 1) % batchSize == 0) {
+                        sqlSession.flushStatements();
+                    }
+                }
+            }
+            metrics.recordRows(operation, oldRules.size());
+            return null;
+        });
+    }
+
+    /**
+     * updateFilteredPolicies replaces the policy rules that match the filter with new rules,
+     * in a single transaction.
+     *
+     * @param sec the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param newRules the new rules.
+     * @param fieldIndex the policy rule's start index to be matched.
+     * @param fieldValues the field values to be matched, value "" means not to match this field.
+     * @return the old rules that have been replaced.
+     */
+    public List<List<String>> updateFilteredPolicies(String sec, String ptype, List<List<String>> newRules, int fieldIndex, String... fieldValues) {
+        CasbinRule filterLine = filterPolicyLine(ptype, fieldIndex, fieldValues);
+        CasbinRuleFilter filter = new CasbinRuleFilter().ptype(ptype);
+        for (int i = 0; i < fieldValues.length; i++) {
+            if (fieldValues[i] != null && !fieldValues[i].isEmpty()) {
+                filter.field(fieldIndex + i, fieldValues[i]);
+            }
+        }
+
+        List<CasbinRule> lines = new ArrayList<>(newRules.size());
+        for (List<String> rule : newRules) {
+            lines.add(savePolicyLine(ptype, rule));
+        }
+
+        flushPending();
+        String table = ruleTable(ptype);
+        lookupValues(Collections.singletonList(filterLine).iterator());
+        addValues(lines.iterator());
+        return measure("updateFilteredPolicies", () -> runInTransaction(sqlSession -> {
+            CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+            List<List<String>> oldRules = new ArrayList<>();
+            List<CasbinRule> deferred = new ArrayList<>();
+            Consumer<CasbinRule> collect = line -> oldRules.add(policyValues(line));
+            casbinRuleDao.streamFiltered(table, filter, dictionaryTable(), orderById(table), decoding(deferred, collect));
+            decodeDeferred(casbinRuleDao, deferred, collect);
+
+            casbinRuleDao.deleteMatchedData(table, encode(filterLine));
+            BatchInserter inserter = newBatchInserter(sqlSession);
+            for (CasbinRule line : lines) {
+                inserter.add(table, encode(line));
+            }
+            inserter.finish();
+            logChange(casbinRuleDao, CasbinRuleLog.OP_REMOVE_FILTERED, fieldIndex, filterLogLine(ptype, fieldValues));
+            logChanges(sqlSession, CasbinRuleLog.OP_ADD, lines);
+            metrics.recordRows("updateFilteredPolicies", oldRules.size() + lines.size());
+            return oldRules;
+        }));
+    }
+
+    private static CasbinRule filterLogLine(String ptype, String... fieldValues) {
+        String[] values = Arrays.copyOf(fieldValues, 6);
+        return new CasbinRule(ptype, values[0], values[1], values[2], values[3], values[4], values[5]);
+    }
+
+    private static CasbinRule filterPolicyLine(String ptype, int fieldIndex, String... fieldValues) {
+        if (fieldIndex < 0 || fieldIndex + fieldValues.length > 6) {
+            throw new IllegalArgumentException("Fields v" + fieldIndex + " to v" + (fieldIndex + fieldValues.length - 1) + " are out of range");
+        }
+        String[] values = new String[6];
+        for (int i = 0; i < fieldValues.length; i++) {
+            if (fieldValues[i] != null && !fieldValues[i].isEmpty()) {
+                values[fieldIndex + i] = fieldValues[i];
+            }
+        }
+        return new CasbinRule(ptype, values[0], values[1], values[2], values[3], values[4], values[5]);
+    }
+
+    /**
+     * removeFilteredPolicy removes policy rules that match the filter from the storage.
+     *
+     * @param sec the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param fieldIndex the policy rule's start index to be matched.
+     * @param fieldValues the field values to be matched, value "" means not to match this field.
+     */
+    @Override
+    public void removeFilteredPolicy(String sec, String ptype, int fieldIndex, String... fieldValues) {
+        removeFilteredPolicyWithCount(sec, ptype, fieldIndex, fieldValues);
+    }
+
+    /**
+     * removeFilteredPolicyWithCount removes policy rules that match the filter from the storage.
+     *
+     * @param sec the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param fieldIndex the policy rule's start index to be matched.
+     * @param fieldValues the field values to be matched, value "" means not to match this field.
+     * @return the number of deleted rows.
+     */
+    public int removeFilteredPolicyWithCount(String sec, String ptype, int fieldIndex, String... fieldValues) {
+        if (fieldValues == null || fieldValues.length == 0) {
+            return 0;
+        }
+        return measure("removeFilteredPolicy", () ->
+                removeFiltered("removeFilteredPolicy", ptype, fieldIndex, Collections.singletonList(Arrays.asList(fieldValues)))[0]);
+    }
+
+    /**
+     * removeFilteredPolicies removes the policy rules that match any of the filters from the storage,
+     * with JDBC batches in a single transaction.
+     *
+     * @param sec the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param fieldIndex the policy rule's start index to be matched by all filters.
+     * @param fieldValues the field values of each filter, value "" means not to match this field.
+     * @return the number of rows deleted for each filter, in the order of fieldValues.
+     */
+    public int[] removeFilteredPolicies(String sec, String ptype, int fieldIndex, List<List<String>> fieldValues) {
+        return measure("removeFilteredPolicies", () -> removeFiltered("removeFilteredPolicies", ptype, fieldIndex, fieldValues));
+    }
+
+    private int[] removeFiltered(String operation, String ptype, int fieldIndex, List<List<String>> filters) {
+        flushPending();
+        if (CollectionUtils.isEmpty(filters)) {
+            return new int[0];
+        }
+        List<CasbinRule> lines = new ArrayList<>(filters.size());
+        for (List<String> values : filters) {
+            lines.add(filterPolicyLine(ptype, fieldIndex, values.toArray(new String[0])));
+        }
+
+        String table = ruleTable(ptype);
+        lookupValues(lines.iterator());
+        return runInTransaction(sqlSession -> {
+            int[] counts = deleteMatchedLines(sqlSession, table, lines);
+            CasbinRuleDao casbinRuleDao = sqlSession.getMapper(CasbinRuleDao.class);
+            for (List<String> values : filters) {
+                logChange(casbinRuleDao, CasbinRuleLog.OP_REMOVE_FILTERED, fieldIndex, filterLogLine(ptype, values.toArray(new String[0])));
+            }
+            metrics.recordRows(operation, Arrays.stream(counts).filter(count -> count > 0).sum());
+            return counts;
+        });
+    }
+
+    /**
+     * loadPolicyAsync loads all policy rules from the storage without blocking the caller.
+     * The model must not be used until the returned future completes.
+     *
+     * @param model the model.
+     * @return a future completed when the policy has been loaded.
+     */
+    public CompletableFuture<Void> loadPolicyAsync(Model model) {
+        return getAsyncRunner().run(() -> loadPolicy(model));
+    }
+
+    /**
+     * savePolicyAsync saves all policy rules to the storage without blocking the caller.
+     * The model must not be changed until the returned future completes.
+     *
+     * @param model the model.
+     * @return a future completed when the policy has been saved.
+     */
+    public CompletableFuture<Void> savePolicyAsync(Model model) {
+        return getAsyncRunner().run(() -> savePolicy(model));
+    }
+
+    /**
+     * addPolicyAsync adds a policy rule to the storage without blocking the caller.
+     *
+     * @param sec the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param rule the policy rule.
+     * @return a future completed when the rule has been added.
+     */
+    public CompletableFuture<Void> addPolicyAsync(String sec, String ptype, List<String> rule) {
+        return getAsyncRunner().run(() -> addPolicy(sec, ptype, rule));
+    }
+
+    /**
+     * addPoliciesAsync adds policy rules to the storage without blocking the caller.
+     *
+     * @param sec the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param rules the policy rules.
+     * @return a future completed when the rules have been added.
+     */
+    public CompletableFuture<Void> addPoliciesAsync(String sec, String ptype, List<List<String>> rules) {
+        return getAsyncRunner().run(() -> addPolicies(sec, ptype, rules));
+    }
+
+    /**
+     * removePolicyAsync removes a policy rule from the storage without blocking the caller.
+     *
+     * @param sec the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param rule the policy rule.
+     * @return a future completed when the rule has been removed.
+     */
+    public CompletableFuture<Void> removePolicyAsync(String sec, String ptype, List<String> rule) {
+        return getAsyncRunner().run(() -> removePolicy(sec, ptype, rule));
+    }
+
+    /**
+     * removePoliciesAsync removes policy rules from the storage without blocking the caller.
+     *
+     * @param sec the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param rules the policy rules.
+     * @return a future of the number of rows deleted for each rule, see removePoliciesWithCounts().
+     */
+    public CompletableFuture<int[]> removePoliciesAsync(String sec, String ptype, List<List<String>> rules) {
+        return getAsyncRunner().submit(() -> removePoliciesWithCounts(sec, ptype, rules));
+    }
+
+    /**
+     * removeFilteredPolicyAsync removes policy rules that match the filter from the storage without blocking the caller.
+     *
+     * @param sec the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param fieldIndex the policy rule's start index to be matched.
+     * @param fieldValues the field values to be matched.
+     * @return a future completed when the rules have been removed.
+     */
+    public CompletableFuture<Void> removeFilteredPolicyAsync(String sec, String ptype, int fieldIndex, String... fieldValues) {
+        return getAsyncRunner().run(() -> removeFilteredPolicy(sec, ptype, fieldIndex, fieldValues));
+    }
+
+    /**
+     * updatePolicyAsync updates a policy rule in the storage without blocking the caller.
+     *
+     * @param sec the section, "p" or "g".
+     * @param ptype the policy type, "p", "p2", .. or "g", "g2", ..
+     * @param oldRule the old rule.
+     * @param newRule the new rule.
+     * @return a future completed when the rule has been updated.
+     */
+    public CompletableFuture<Void> updatePolicyAsync(String sec, String ptype, List<String> oldRule, List<String> newRule) {
+        return getAsyncRunner().run(() -> updatePolicy(sec, ptype, oldRule, newRule));
     }
 }
@@ -0,0 +1,481 @@
+package org.casbin.adapter;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * MybatisAdapterBuilder builds a MybatisAdapter.
+ * The adapter either uses an existing DataSource or SqlSessionFactory, like a shared HikariCP pool,
+ * or builds its own MyBatis PooledDataSource from the driver, URL and pool settings.
+ *
+ * <pre>
+ * MybatisAdapter a = MybatisAdapter.builder()
+ *         .dataSource(hikariDataSource)
+ *         .batchSize(500)
+ *         .build();
+ * </pre>
+ */
+public class MybatisAdapterBuilder {
+    String driver;
+    String url;
+    String username;
+    String password;
+    boolean dbSpecified = false;
+    DataSource dataSource;
+    SqlSessionFactory sqlSessionFactory;
+
+    Integer poolMaximumActiveConnections;
+    Integer poolMaximumIdleConnections;
+    Integer poolMaximumCheckoutTime;
+    Integer poolTimeToWait;
+    Boolean poolPingEnabled;
+    String poolPingQuery;
+    Integer poolPingConnectionsNotUsedFor;
+    final Properties driverProperties = new Properties();
+
+    Integer fetchSize;
+    int batchSize = 1000;
+    int maxRowsPerStatement = 0;
+    boolean diffSave = false;
+    boolean changeLog = false;
+    int changeLogWindow = 1000;
+    AdapterMetrics metrics = AdapterMetrics.NOOP;
+    int writeBehindMaxPending = 0;
+    long writeBehindMaxDelayMillis = 0;
+    boolean writeBehindWaitForCommit = false;
+    int loadParallelism = 1;
+    Path snapshotFile;
+    int maxInternedValues = 0;
+    Executor asyncExecutor;
+    int maxInFlight = 0;
+    String tableName = "casbin_rule";
+    String schema;
+    TableLayout tableLayout = TableLayout.SINGLE;
+    Dialect dialect;
+    boolean bulkSave = false;
+    boolean dedup = false;
+    int deadlockRetries = 3;
+    boolean dictionary = false;
+    SchemaMode schemaMode = SchemaMode.MIGRATE;
+    final List<DataSource> readReplicas = new ArrayList<>();
+    long replicaRetryMillis = 30000;
+    long readYourWritesMillis = 0;
+
+    MybatisAdapterBuilder() {
+    }
+
+    /**
+     * jdbc sets the connection settings used to build the adapter's own connection pool.
+     *
+     * @param driver the database driver, like "com.mysql.cj.jdbc.Driver".
+     * @param url the database URL, like "jdbc:mysql://localhost:3306/casbin".
+     * @param username the username of the database.
+     * @param password the password of the database.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder jdbc(String driver, String url, String username, String password) {
+        this.driver = driver;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        return this;
+    }
+
+    /**
+     * dbSpecified sets whether the URL passed to jdbc() already contains an existing DB.
+     * If false, the adapter will automatically create a DB named "casbin".
+     *
+     * @param dbSpecified whether you have specified an existing DB in url.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder dbSpecified(boolean dbSpecified) {
+        this.dbSpecified = dbSpecified;
+        return this;
+    }
+
+    /**
+     * dataSource makes the adapter use an existing DataSource instead of building its own pool.
+     * The DataSource must point to an existing DB, and it is not closed by MybatisAdapter.close().
+     *
+     * @param dataSource the DataSource.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder dataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        return this;
+    }
+
+    /**
+     * sqlSessionFactory makes the adapter use an existing SqlSessionFactory.
+     * CasbinRuleDao is registered to its configuration if it is not there yet.
+     *
+     * @param sqlSessionFactory the SqlSessionFactory.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder sqlSessionFactory(SqlSessionFactory sqlSessionFactory) {
+        this.sqlSessionFactory = sqlSessionFactory;
+        return this;
+    }
+
+    /**
+     * poolSize sets the sizing of the adapter's own connection pool.
+     *
+     * @param maximumActiveConnections the maximum number of connections in use at the same time.
+     * @param maximumIdleConnections the maximum number of idle connections kept open.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder poolSize(int maximumActiveConnections, int maximumIdleConnections) {
+        this.poolMaximumActiveConnections = maximumActiveConnections;
+        this.poolMaximumIdleConnections = maximumIdleConnections;
+        return this;
+    }
+
+    /**
+     * poolTimeouts sets the timeouts of the adapter's own connection pool.
+     *
+     * @param maximumCheckoutTime the time in milliseconds a connection can be checked out before it is reclaimed.
+     * @param timeToWait the time in milliseconds to wait for a connection before logging and retrying.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder poolTimeouts(int maximumCheckoutTime, int timeToWait) {
+        this.poolMaximumCheckoutTime = maximumCheckoutTime;
+        this.poolTimeToWait = timeToWait;
+        return this;
+    }
+
+    /**
+     * poolValidation makes the adapter's own pool validate idle connections before handing them out.
+     *
+     * @param pingQuery the query used to validate a connection, like "SELECT 1".
+     * @param pingConnectionsNotUsedFor only connections idle for longer than this many milliseconds are validated.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder poolValidation(String pingQuery, int pingConnectionsNotUsedFor) {
+        this.poolPingEnabled = true;
+        this.poolPingQuery = pingQuery;
+        this.poolPingConnectionsNotUsedFor = pingConnectionsNotUsedFor;
+        return this;
+    }
+
+    /**
+     * driverProperty sets a JDBC driver property of the adapter's own pool,
+     * like "cachePrepStmts" and "prepStmtCacheSize" to enable statement caching on MySQL.
+     *
+     * @param name the property name.
+     * @param value the property value.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder driverProperty(String name, String value) {
+        this.driverProperties.setProperty(name, value);
+        return this;
+    }
+
+    /**
+     * fetchSize sets the JDBC fetch size used when streaming policy rules, see MybatisAdapter.setFetchSize().
+     *
+     * @param fetchSize the fetch size.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder fetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    /**
+     * batchSize sets how many rows are sent in one JDBC batch, see MybatisAdapter.setBatchSize().
+     *
+     * @param batchSize the batch size.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * maxRowsPerStatement sets how many rows one INSERT writes, see MybatisAdapter.setMaxRowsPerStatement().
+     *
+     * @param maxRowsPerStatement the maximum rows per statement.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder maxRowsPerStatement(int maxRowsPerStatement) {
+        this.maxRowsPerStatement = maxRowsPerStatement;
+        return this;
+    }
+
+    /**
+     * diffSave sets whether savePolicy only writes the changes, see MybatisAdapter.setDiffSave().
+     *
+     * @param diffSave whether to enable diff save.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder diffSave(boolean diffSave) {
+        this.diffSave = diffSave;
+        return this;
+    }
+
+    /**
+     * changeLog sets whether every change is recorded in the casbin_rule_log table, see MybatisAdapter.setChangeLog().
+     *
+     * @param changeLog whether to enable the change log.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder changeLog(boolean changeLog) {
+        this.changeLog = changeLog;
+        return this;
+    }
+
+    /**
+     * changeLogWindow sets how long loadIncrementalPolicy() waits for a missing revision of the change log,
+     * see MybatisAdapter.setChangeLogWindow().
+     *
+     * @param changeLogWindow the window in revisions, 1000 by default.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder changeLogWindow(int changeLogWindow) {
+        this.changeLogWindow = changeLogWindow;
+        return this;
+    }
+
+    /**
+     * metrics sets where the adapter reports its timings and row counts, see MybatisAdapter.setMetrics().
+     *
+     * @param metrics the metrics, like JmxAdapterMetrics or MicrometerAdapterMetrics.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder metrics(AdapterMetrics metrics) {
+        this.metrics = metrics == null ? AdapterMetrics.NOOP : metrics;
+        return this;
+    }
+
+    /**
+     * loadParallelism sets how many partitions of the table loadPolicy reads at the same time, see MybatisAdapter.setLoadParallelism().
+     *
+     * @param loadParallelism the number of partitions read at the same time.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder loadParallelism(int loadParallelism) {
+        this.loadParallelism = loadParallelism;
+        return this;
+    }
+
+    /**
+     * snapshotFile enables the local snapshot cache of the policy, see MybatisAdapter.setSnapshotFile().
+     *
+     * @param snapshotFile the snapshot file.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder snapshotFile(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        return this;
+    }
+
+    /**
+     * maxInternedValues makes loads share one String instance for equal rule values, see MybatisAdapter.setMaxInternedValues().
+     *
+     * @param maxInternedValues the maximum number of distinct values kept per load.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder maxInternedValues(int maxInternedValues) {
+        this.maxInternedValues = maxInternedValues;
+        return this;
+    }
+
+    /**
+     * writeBehind enables the write-behind mode of addPolicy() and removePolicy(), see MybatisAdapter.setWriteBehind().
+     *
+     * @param maxPending the number of queued rules that triggers a write.
+     * @param maxDelayMillis the maximum time in milliseconds a change stays queued, or 0 to only write on size or flush().
+     * @param waitForCommit whether addPolicy() and removePolicy() wait for their change to be committed.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder writeBehind(int maxPending, long maxDelayMillis, boolean waitForCommit) {
+        this.writeBehindMaxPending = maxPending;
+        this.writeBehindMaxDelayMillis = maxDelayMillis;
+        this.writeBehindWaitForCommit = waitForCommit;
+        return this;
+    }
+
+    /**
+     * asyncExecutor sets where the async methods, like addPolicyAsync(), run, see MybatisAdapter.setAsyncExecutor().
+     *
+     * @param asyncExecutor the executor.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder asyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+        return this;
+    }
+
+    /**
+     * maxInFlight sets how many async operations may be in flight at the same time, see MybatisAdapter.setAsyncExecutor().
+     *
+     * @param maxInFlight the maximum number of operations in flight.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder maxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * tableName sets the name of the rule table, and the prefix of the other tables of the adapter,
+     * like casbin_rule_log. Only letters, digits and underscores are allowed.
+     *
+     * @param tableName the table name, "casbin_rule" by default.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder tableName(String tableName) {
+        this.tableName = tableName;
+        return this;
+    }
+
+    /**
+     * schema sets the schema of the tables, like "authz". Only letters, digits and underscores are allowed.
+     *
+     * @param schema the schema, or null to use the default schema of the connection.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder schema(String schema) {
+        this.schema = schema;
+        return this;
+    }
+
+    /**
+     * tableLayout sets whether all rules share one table, or each section or ptype has its own table.
+     * With a table per ptype, loads, deletes and updates of a ptype only touch its own table and indexes.
+     *
+     * @param tableLayout the layout, TableLayout.SINGLE by default.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder tableLayout(TableLayout tableLayout) {
+        this.tableLayout = tableLayout;
+        return this;
+    }
+
+    /**
+     * dialect sets the dialect of the database, instead of the one chosen from the driver.
+     *
+     * @param dialect the dialect.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder dialect(Dialect dialect) {
+        this.dialect = dialect;
+        return this;
+    }
+
+    /**
+     * bulkSave sets whether savePolicy uses the native bulk import of the database, see MybatisAdapter.setBulkSave().
+     * The connection pool built by the adapter is configured for it, like allowLoadLocalInfile for MySQL.
+     *
+     * @param bulkSave whether to enable bulk save.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder bulkSave(boolean bulkSave) {
+        this.bulkSave = bulkSave;
+        return this;
+    }
+
+    /**
+     * dedup sets whether the rule tables hold each rule at most once, see MybatisAdapter.setDedup().
+     *
+     * @param dedup whether to enable the dedup mode.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder dedup(boolean dedup) {
+        this.dedup = dedup;
+        return this;
+    }
+
+    /**
+     * deadlockRetries sets how many times a transaction rolled back by a deadlock is run again,
+     * see MybatisAdapter.setDeadlockRetries().
+     *
+     * @param deadlockRetries the maximum retries, 3 by default.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder deadlockRetries(int deadlockRetries) {
+        this.deadlockRetries = deadlockRetries;
+        return this;
+    }
+
+    /**
+     * dictionary sets whether the rules are stored dictionary-encoded: every distinct value is stored once in
+     * the casbin_rule_dict table, and the rule tables hold the integer ids of the values instead of the values.
+     * The rule tables of this storage have integer columns, so they need a table name of their own, see tableName().
+     *
+     * @param dictionary whether to use the dictionary storage.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder dictionary(boolean dictionary) {
+        this.dictionary = dictionary;
+        return this;
+    }
+
+    /**
+     * schemaMode sets whether the adapter creates and migrates its tables, or only checks that they are current.
+     * Either way, the versions recorded in the casbin_rule_schema table let an up-to-date schema start without DDL.
+     *
+     * @param schemaMode the mode, SchemaMode.MIGRATE by default.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder schemaMode(SchemaMode schemaMode) {
+        this.schemaMode = schemaMode;
+        return this;
+    }
+
+    /**
+     * readReplicas adds read replicas of the database. loadPolicy() and loadFilteredPolicy() read from them
+     * in turn, and fall back to the primary when they are all down, while all changes are written to the primary.
+     * The replicas must have the same tables as the primary, which the adapter only creates on the primary.
+     *
+     * @param replicas the DataSources of the replicas.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder readReplicas(DataSource... replicas) {
+        this.readReplicas.addAll(Arrays.asList(replicas));
+        return this;
+    }
+
+    /**
+     * replicaRetryMillis sets how long a read replica is skipped after a connection or a read to it failed.
+     *
+     * @param replicaRetryMillis the delay in milliseconds, 30000 by default.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder replicaRetryMillis(long replicaRetryMillis) {
+        this.replicaRetryMillis = replicaRetryMillis;
+        return this;
+    }
+
+    /**
+     * readYourWrites sets how long loads read from the primary after a change made through the adapter,
+     * see MybatisAdapter.setReadYourWrites().
+     *
+     * @param readYourWritesMillis the delay in milliseconds.
+     * @return this builder.
+     */
+    public MybatisAdapterBuilder readYourWrites(long readYourWritesMillis) {
+        this.readYourWritesMillis = readYourWritesMillis;
+        return this;
+    }
+
+    /**
+     * build creates the adapter and makes sure its tables exist.
+     *
+     * @return the adapter.
+     */
+    public MybatisAdapter build() {
+        if (sqlSessionFactory == null && dataSource == null && (driver == null || url == null)) {
+            throw new IllegalStateException("Either a DataSource, a SqlSessionFactory or JDBC settings are required");
+        }
+        return new MybatisAdapter(this);
+    }
+}
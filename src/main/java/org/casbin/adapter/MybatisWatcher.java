@@ -0,0 +1,128 @@
+package org.casbin.adapter;
+
+import org.casbin.jcasbin.persist.Watcher;
+
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * MybatisWatcher is a Watcher that polls the single row of the casbin_rule_revision table,
+ * which adapters with a watcher increment in the transaction of every change, see MybatisAdapter.newWatcher().
+ * A poll is a primary key read, so it costs the same whatever the size of the policy.
+ *
+ * The update callback runs on the polling thread once the revision has not changed for debounceMillis,
+ * so a burst of changes triggers a single reload, and at the latest 10 times debounceMillis after the
+ * first change of the burst. Changes committed by the adapter of the watcher itself don't trigger it.
+ */
+public class MybatisWatcher implements Watcher, AutoCloseable {
+    private static final int MAX_DEBOUNCE_FACTOR = 10;
+
+    private final LongSupplier revisions;
+    private final long debounceNanos;
+    private final ScheduledExecutorService scheduler;
+    private final NavigableSet<Long> ownRevisions = new ConcurrentSkipListSet<>();
+    private volatile Consumer<String> callback = message -> {
+    };
+
+    // Only used by the polling thread.
+    private long lastRevision;
+    private boolean pending = false;
+    private long firstChangeNanos;
+    private long lastChangeNanos;
+
+    MybatisWatcher(LongSupplier revisions, long pollIntervalMillis, long debounceMillis) {
+        if (pollIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Poll interval must be positive: " + pollIntervalMillis);
+        }
+        if (debounceMillis < 0) {
+            throw new IllegalArgumentException("Debounce delay must not be negative: " + debounceMillis);
+        }
+        this.revisions = revisions;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.lastRevision = revisions.getAsLong();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "casbin-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void setUpdateCallback(Runnable runnable) {
+        this.callback = message -> runnable.run();
+    }
+
+    /**
+     * setUpdateCallback sets the callback, which is passed the revision that triggered it.
+     */
+    @Override
+    public void setUpdateCallback(Consumer<String> func) {
+        this.callback = func;
+    }
+
+    /**
+     * update does nothing, the revision is already incremented by the adapter in the transaction of the change.
+     */
+    @Override
+    public void update() {
+    }
+
+    /**
+     * close stops polling.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * recordOwnRevision records the revision of a change of the adapter of this watcher, so it doesn't trigger
+     * the callback. It is recorded before the change commits, so a poll can't see the revision before.
+     */
+    void recordOwnRevision(long revision) {
+        ownRevisions.add(revision);
+    }
+
+    /**
+     * forgetOwnRevision forgets the revision of a change that failed to commit. The transaction of the change
+     * still locks the revision row, so no other change can commit the same revision until it is forgotten.
+     */
+    void forgetOwnRevision(long revision) {
+        ownRevisions.remove(revision);
+    }
+
+    private void poll() {
+        try {
+            long revision = revisions.getAsLong();
+            long now = System.nanoTime();
+            if (revision != lastRevision) {
+                NavigableSet<Long> own = ownRevisions.subSet(lastRevision, false, revision, true);
+                boolean foreign = revision < lastRevision || own.size() != revision - lastRevision;
+                own.clear();
+                lastRevision = revision;
+                if (foreign) {
+                    if (!pending) {
+                        pending = true;
+                        firstChangeNanos = now;
+                    }
+                    lastChangeNanos = now;
+                }
+            }
+            // Revisions left over when the revision went back, like after the table was recreated.
+            ownRevisions.headSet(lastRevision, true).clear();
+
+            if (pending && (now - lastChangeNanos >= debounceNanos || now - firstChangeNanos >= debounceNanos * MAX_DEBOUNCE_FACTOR)) {
+                pending = false;
+                callback.accept(String.valueOf(lastRevision));
+            }
+        } catch (RuntimeException e) {
+            // The database may be unreachable for a while, or the callback failed: try again at the next poll.
+        }
+    }
+}
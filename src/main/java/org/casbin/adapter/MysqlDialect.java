@@ -0,0 +1,171 @@
+package org.casbin.adapter;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * MysqlDialect is the dialect of MySQL and MariaDB.
+ * Bulk saves stream the rules with LOAD DATA LOCAL INFILE, which needs local_infile enabled on the server
+ * and allowLoadLocalInfile=true on the connection. The connection pool built by the adapter sets the latter.
+ */
+class MysqlDialect implements Dialect {
+    // The statement interfaces of Connector/J 8, Connector/J 5 and MariaDB Connector/J, which can read LOCAL INFILE from a stream.
+    private static final String[] STATEMENT_TYPES = {
+            "com.mysql.cj.jdbc.JdbcStatement", "com.mysql.jdbc.Statement", "org.mariadb.jdbc.MariaDbStatement"};
+
+    @Override
+    public void createDatabase(CasbinRuleDao casbinRuleDao, String databaseName) {
+        casbinRuleDao.createMysqlDatabase(databaseName);
+    }
+
+    @Override
+    public void createTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createMysqlTable(tableName, baseName, "VARCHAR(100)");
+    }
+
+    @Override
+    public void createIdTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createMysqlTable(tableName, baseName, "INT");
+    }
+
+    @Override
+    public void createDictionaryTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createMysqlDictionaryTable(tableName, baseName);
+    }
+
+    @Override
+    public void createChangeLogTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createMysqlChangeLogTable(tableName);
+    }
+
+    @Override
+    public void createRevisionTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createMysqlRevisionTable(tableName);
+    }
+
+    @Override
+    public void createSchemaTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createMysqlSchemaTable(tableName);
+    }
+
+    @Override
+    public void addRuleKeys(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.addMysqlRuleKeys(tableName, baseName);
+    }
+
+    /**
+     * createUniqueIndex indexes an MD5 of the rule in a stored generated column, rule_key, since MySQL
+     * doesn't consider NULLs equal in unique indexes and 7 VARCHAR(100) may exceed its key length.
+     * Values are compared case-sensitively, as Casbin does.
+     */
+    @Override
+    public void createUniqueIndex(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        int dot = tableName.indexOf('.');
+        String schema = dot < 0 ? null : tableName.substring(0, dot);
+        if (casbinRuleDao.countMysqlIndexes(schema, baseName, "uk_" + baseName) == 0) {
+            casbinRuleDao.createMysqlUniqueIndex(tableName, baseName);
+        }
+    }
+
+    /**
+     * isRetryable also retries lock wait timeouts (1205), which only roll back the statement,
+     * since the adapter rolls back the whole transaction before running it again.
+     */
+    @Override
+    public boolean isRetryable(SQLException e) {
+        return e.getErrorCode() == 1213 || e.getErrorCode() == 1205 || Dialect.super.isRetryable(e);
+    }
+
+    @Override
+    public void upsertRules(CasbinRuleDao casbinRuleDao, String tableName, List<CasbinRule> rules) {
+        casbinRuleDao.upsertMysqlBatch(tableName, rules);
+    }
+
+    @Override
+    public void configureBulkLoad(Properties driverProperties) {
+        driverProperties.setProperty("allowLoadLocalInfile", "true");
+    }
+
+    @Override
+    public long bulkInsert(Connection connection, String tableName, Iterator<CasbinRule> rules, int batchSize) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            setLocalInfileInputStream(statement, new RuleLineStream(rules, MysqlDialect::appendLine));
+            return statement.executeUpdate("LOAD DATA LOCAL INFILE 'casbin_rule.tsv' INTO TABLE " + tableName + " " +
+                    "CHARACTER SET utf8mb4 " +
+                    "FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' " +
+                    "(ptype, v0, v1, v2, v3, v4, v5)");
+        }
+    }
+
+    /**
+     * replaceTables swaps all tables with a single RENAME TABLE, which MySQL applies atomically.
+     */
+    @Override
+    public void replaceTables(CasbinRuleDao casbinRuleDao, List<TableSwap> swaps) {
+        casbinRuleDao.swapMysqlTables(swaps);
+        for (TableSwap swap : swaps) {
+            casbinRuleDao.dropMysqlTable(swap.getOldTable());
+        }
+    }
+
+    private static void setLocalInfileInputStream(Statement statement, InputStream stream) throws SQLException {
+        for (String name : STATEMENT_TYPES) {
+            try {
+                Class<?> type = Class.forName(name, true, statement.getClass().getClassLoader());
+                if (statement.isWrapperFor(type)) {
+                    type.getMethod("setLocalInfileInputStream", InputStream.class).invoke(statement.unwrap(type), stream);
+                    return;
+                }
+            } catch (ClassNotFoundException ignored) {
+                // Try the next driver.
+            } catch (ReflectiveOperationException e) {
+                throw new SQLException("Failed to set the LOAD DATA LOCAL INFILE stream", e);
+            }
+        }
+        throw new SQLException("The JDBC driver doesn't support LOAD DATA LOCAL INFILE from a stream: " + statement.getClass().getName());
+    }
+
+    private static void appendLine(StringBuilder out, CasbinRule line) {
+        appendValue(out, line.getPtype());
+        for (String value : new String[]{line.getV0(), line.getV1(), line.getV2(), line.getV3(), line.getV4(), line.getV5()}) {
+            out.append('\t');
+            appendValue(out, value);
+        }
+        out.append('\n');
+    }
+
+    private static void appendValue(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("\\N");
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\0':
+                    out.append("\\0");
+                    break;
+                default:
+                    out.append(c);
+                    break;
+            }
+        }
+    }
+}
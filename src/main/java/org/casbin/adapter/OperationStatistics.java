@@ -0,0 +1,138 @@
+package org.casbin.adapter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OperationStatistics accumulates the timings of one adapter operation since it was created.
+ * Durations are kept in a log-linear histogram with 8 buckets per power of two,
+ * so percentiles are accurate to about 12%.
+ */
+class OperationStatistics implements OperationStatisticsMXBean {
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray buckets = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+    private volatile long lastDistinctValues;
+    private volatile long lastBytesSaved;
+
+    void record(long durationNanos, boolean failed) {
+        long nanos = Math.max(0, durationNanos);
+        count.increment();
+        if (failed) {
+            errors.increment();
+        }
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        buckets.incrementAndGet(bucket(nanos));
+    }
+
+    void addRows(long n) {
+        rows.add(n);
+    }
+
+    void setInterning(long distinctValues, long bytesSaved) {
+        lastDistinctValues = distinctValues;
+        lastBytesSaved = bytesSaved;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : toMillis(totalNanos.sum()) / n;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return toMillis(maxNanos.get());
+    }
+
+    @Override
+    public double getP50Millis() {
+        return percentileMillis(0.5);
+    }
+
+    @Override
+    public double getP95Millis() {
+        return percentileMillis(0.95);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return percentileMillis(0.99);
+    }
+
+    @Override
+    public long getLastDistinctValues() {
+        return lastDistinctValues;
+    }
+
+    @Override
+    public long getLastBytesSaved() {
+        return lastBytesSaved;
+    }
+
+    double percentileMillis(double percentile) {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return toMillis(upperBound(i));
+            }
+        }
+        return getMaxMillis();
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) ((nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,26 @@
+package org.casbin.adapter;
+
+/**
+ * OperationStatisticsMXBean is the JMX view of one adapter operation, registered by JmxAdapterMetrics.
+ */
+public interface OperationStatisticsMXBean {
+    long getCount();
+
+    long getErrorCount();
+
+    long getRows();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+
+    long getLastDistinctValues();
+
+    long getLastBytesSaved();
+}
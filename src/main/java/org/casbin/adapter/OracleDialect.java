@@ -0,0 +1,86 @@
+package org.casbin.adapter;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * OracleDialect is the dialect of Oracle.
+ * Bulk saves use the default JDBC batches, which the Oracle driver sends as array binds,
+ * one round trip per batch. Oracle commits DDL immediately, so the tables are renamed one after the other.
+ */
+class OracleDialect implements Dialect {
+    @Override
+    public void createTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createOracleTable(tableName, baseName, "VARCHAR(100)");
+    }
+
+    @Override
+    public void createIdTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createOracleTable(tableName, baseName, "NUMBER(10)");
+    }
+
+    @Override
+    public void createDictionaryTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createOracleDictionaryTable(tableName, baseName);
+    }
+
+    @Override
+    public void createChangeLogTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createOracleChangeLogTable(tableName, baseName);
+    }
+
+    @Override
+    public void createRevisionTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createOracleRevisionTable(tableName, baseName);
+    }
+
+    @Override
+    public void createSchemaTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createOracleSchemaTable(tableName, baseName);
+    }
+
+    /**
+     * addRuleKeys ends the index over the rule with id, like createTable(), since Oracle doesn't allow
+     * two indexes on the same columns, and the unique index of the dedup mode has (ptype, v0..v5).
+     */
+    @Override
+    public void addRuleKeys(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.addOracleRuleKeys(tableName, baseName);
+    }
+
+    /**
+     * isRetryable retries deadlocks (ORA-00060) and serialization failures (ORA-08177).
+     */
+    @Override
+    public boolean isRetryable(SQLException e) {
+        return e.getErrorCode() == 60 || e.getErrorCode() == 8177 || Dialect.super.isRetryable(e);
+    }
+
+    @Override
+    public void createUniqueIndex(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createOracleUniqueIndex(tableName, baseName);
+    }
+
+    @Override
+    public void upsertRules(CasbinRuleDao casbinRuleDao, String tableName, List<CasbinRule> rules) {
+        for (CasbinRule line : rules) {
+            casbinRuleDao.mergeOracle(tableName, line);
+        }
+    }
+
+    @Override
+    public void dropTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.dropOracleTable(tableName, baseName);
+    }
+
+    @Override
+    public Long selectIdAtOffset(CasbinRuleDao casbinRuleDao, String tableName, long offset) {
+        return casbinRuleDao.selectIdAtOffsetFetch(tableName, offset);
+    }
+
+    @Override
+    public int getMaxRowsPerStatement() {
+        // Oracle doesn't support multi-row VALUES, so rows are only batched by JDBC.
+        return 1;
+    }
+}
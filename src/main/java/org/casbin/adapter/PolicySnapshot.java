@@ -0,0 +1,183 @@
+package org.casbin.adapter;
+
+import org.casbin.jcasbin.model.Assertion;
+import org.casbin.jcasbin.model.Model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * PolicySnapshot reads and writes the local snapshot file of the policy.
+ *
+ * The file starts with a magic number, a format version and the revision of casbin_rule_revision
+ * it was taken at, followed by a dictionary of the distinct values and the rules, which refer to
+ * the dictionary by index. All counts and indexes are variable-length integers, and the file ends
+ * with a CRC32 of everything before it. It is memory-mapped when read, and each distinct value
+ * is decoded only once, so the loaded rules share their strings.
+ */
+class PolicySnapshot {
+    private static final int MAGIC = 0x43525350;
+    private static final int VERSION = 1;
+
+    private PolicySnapshot() {
+    }
+
+    /**
+     * write writes the p and g rules of the model to the file, replacing it atomically.
+     */
+    static void write(Path file, long revision, Model model) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        List<int[]> rules = new ArrayList<>();
+        for (String sec : new String[]{"p", "g"}) {
+            Map<String, Assertion> section = model.model.get(sec);
+            if (section == null) {
+                continue;
+            }
+            for (Map.Entry<String, Assertion> entry : section.entrySet()) {
+                int ptype = id(ids, dictionary, entry.getKey());
+                for (List<String> rule : entry.getValue().policy) {
+                    int[] encoded = new int[rule.size() + 1];
+                    encoded[0] = ptype;
+                    for (int i = 0; i < rule.size(); i++) {
+                        encoded[i + 1] = id(ids, dictionary, rule.get(i));
+                    }
+                    rules.add(encoded);
+                }
+            }
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (OutputStream fileOut = Files.newOutputStream(temp)) {
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOut, 1 << 16), crc));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(revision);
+                writeVarInt(out, dictionary.size());
+                for (String value : dictionary) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    writeVarInt(out, bytes.length);
+                    out.write(bytes);
+                }
+                writeVarInt(out, rules.size());
+                for (int[] rule : rules) {
+                    writeVarInt(out, rule.length - 1);
+                    for (int value : rule) {
+                        writeVarInt(out, value);
+                    }
+                }
+                out.writeLong(crc.getValue());
+                out.flush();
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * read reads the rules of the file if it was taken at the revision.
+     *
+     * @return the rules of each ptype, or null if the file is missing, corrupted or taken at another revision.
+     */
+    static Map<String, List<List<String>>> read(Path file, long revision) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < 24 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getLong(8) != revision) {
+                return null;
+            }
+            int end = buffer.limit() - 8;
+            CRC32 crc = new CRC32();
+            ByteBuffer content = buffer.duplicate();
+            content.limit(end);
+            crc.update(content);
+            if (crc.getValue() != buffer.getLong(end)) {
+                return null;
+            }
+
+            buffer.position(16);
+            buffer.limit(end);
+            String[] dictionary = new String[readVarInt(buffer)];
+            for (int i = 0; i < dictionary.length; i++) {
+                byte[] bytes = new byte[readVarInt(buffer)];
+                buffer.get(bytes);
+                dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            Map<String, List<List<String>>> rules = new LinkedHashMap<>();
+            int count = readVarInt(buffer);
+            for (int i = 0; i < count; i++) {
+                int size = readVarInt(buffer);
+                String ptype = dictionary[readVarInt(buffer)];
+                List<String> rule = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    rule.add(dictionary[readVarInt(buffer)]);
+                }
+                rules.computeIfAbsent(ptype, key -> new ArrayList<>()).add(rule);
+            }
+            return rules;
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            return null;
+        }
+    }
+
+    private static int id(Map<String, Integer> ids, List<String> dictionary, String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = dictionary.size();
+            ids.put(value, id);
+            dictionary.add(value);
+        }
+        return id;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IndexOutOfBoundsException("Malformed variable-length integer");
+    }
+}
@@ -0,0 +1,87 @@
+package org.casbin.adapter;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * ReplicaRouter spreads reads over the read replicas in turn.
+ * A replica is skipped for retryMillis after a connection to it failed, or after a read on it failed,
+ * and select() returns null when every replica is down, so the caller reads from the primary instead.
+ */
+class ReplicaRouter {
+    private static class Replica {
+        final DataSource dataSource;
+        final SqlSessionFactory factory;
+        volatile long downUntil;
+
+        Replica(DataSource dataSource, SqlSessionFactory factory) {
+            this.dataSource = dataSource;
+            this.factory = factory;
+        }
+    }
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long retryNanos;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ReplicaRouter(List<DataSource> dataSources, Function<DataSource, SqlSessionFactory> factories, long retryMillis) {
+        if (retryMillis < 0) {
+            throw new IllegalArgumentException("Replica retry delay must not be negative: " + retryMillis);
+        }
+        for (DataSource dataSource : dataSources) {
+            replicas.add(new Replica(dataSource, factories.apply(dataSource)));
+        }
+        this.retryNanos = TimeUnit.MILLISECONDS.toNanos(retryMillis);
+    }
+
+    /**
+     * select returns the session factory of the next healthy replica, or null if they are all down.
+     * A connection is taken from the replica first, so a replica that can't be reached is skipped right away.
+     */
+    SqlSessionFactory select() {
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.downUntil - System.nanoTime() > 0) {
+                continue;
+            }
+            try (Connection ignored = replica.dataSource.getConnection()) {
+                return replica.factory;
+            } catch (SQLException e) {
+                markDown(replica);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * markDown skips the replica of the factory for retryMillis, after a read on it failed.
+     */
+    void markDown(SqlSessionFactory factory) {
+        for (Replica replica : replicas) {
+            if (replica.factory == factory) {
+                markDown(replica);
+            }
+        }
+    }
+
+    List<SqlSessionFactory> getFactories() {
+        List<SqlSessionFactory> factories = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            factories.add(replica.factory);
+        }
+        return factories;
+    }
+
+    private void markDown(Replica replica) {
+        replica.downUntil = System.nanoTime() + retryNanos;
+    }
+}
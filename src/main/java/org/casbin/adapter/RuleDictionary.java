@@ -0,0 +1,175 @@
+package org.casbin.adapter;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.casbin.jcasbin.exception.CasbinAdapterException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RuleDictionary maps the rule values of the dictionary storage to the integer ids stored in the rule tables.
+ * Entries are only ever added to the dictionary table, so an entry read once stays valid: refresh() reads
+ * the entries added since the last refresh, and all rules share the decoded value instances.
+ * Ids are kept as strings, the way the rule columns are read and bound.
+ */
+class RuleDictionary {
+    // Ids start at 1, so a value missing from the dictionary is matched with an id no row has.
+    static final String MISSING_ID = "0";
+    // Within both the 2100 parameters of SQL Server and the 1000 IN values of Oracle.
+    private static final int VALUES_PER_QUERY = 500;
+
+    private final String table;
+    private final Map<String, String> ids = new ConcurrentHashMap<>();
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    private long maxId = 0;
+
+    RuleDictionary(String table) {
+        this.table = table;
+    }
+
+    String getTable() {
+        return table;
+    }
+
+    /**
+     * refresh reads the entries added since the last refresh, or all entries with full.
+     * Ids are not always committed in order, so an id missing after a refresh needs a full one.
+     */
+    synchronized void refresh(CasbinRuleDao casbinRuleDao, boolean full) {
+        long[] max = {maxId};
+        casbinRuleDao.streamDictionary(table, full ? 0 : maxId, context -> {
+            DictionaryEntry entry = context.getResultObject();
+            put(entry);
+            max[0] = Math.max(max[0], entry.getId());
+        });
+        maxId = max[0];
+    }
+
+    /**
+     * resolve adds the values of the rules that are missing from the dictionary, with statements of
+     * rowsPerStatement values in auto-commit mode, and reads their ids.
+     * A value added by another node at the same time fails to be inserted and is read instead.
+     */
+    void resolve(CasbinRuleDao casbinRuleDao, Iterator<CasbinRule> lines, int rowsPerStatement) {
+        List<String> missing = missingValues(lines);
+        if (missing.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < missing.size(); from += rowsPerStatement) {
+            List<String> chunk = missing.subList(from, Math.min(from + rowsPerStatement, missing.size()));
+            try {
+                if (chunk.size() == 1) {
+                    casbinRuleDao.insertDictionaryValue(table, chunk.get(0));
+                } else {
+                    casbinRuleDao.insertDictionaryValues(table, chunk);
+                }
+            } catch (PersistenceException e) {
+                for (String value : chunk) {
+                    try {
+                        casbinRuleDao.insertDictionaryValue(table, value);
+                    } catch (PersistenceException ignored) {
+                        // Added by another node, its id is read below.
+                    }
+                }
+            }
+        }
+        select(casbinRuleDao, missing);
+        for (String value : missing) {
+            if (!ids.containsKey(value)) {
+                throw new CasbinAdapterException("Failed to add '" + value + "' to " + table);
+            }
+        }
+    }
+
+    /**
+     * lookup reads the ids of the values of the rules that are not known yet, without adding them,
+     * so rules added by other nodes can be matched.
+     */
+    void lookup(CasbinRuleDao casbinRuleDao, Iterator<CasbinRule> lines) {
+        List<String> missing = missingValues(lines);
+        if (!missing.isEmpty()) {
+            select(casbinRuleDao, missing);
+        }
+    }
+
+    /**
+     * encode returns the rule with the ids of its values. A value missing from the dictionary
+     * gets MISSING_ID, so the rule matches no row.
+     */
+    CasbinRule encode(CasbinRule line) {
+        return new CasbinRule(line.getPtype(), id(line.getV0()), id(line.getV1()), id(line.getV2()),
+                id(line.getV3()), id(line.getV4()), id(line.getV5()));
+    }
+
+    Iterator<CasbinRule> encode(Iterator<CasbinRule> lines) {
+        return new Iterator<CasbinRule>() {
+            @Override
+            public boolean hasNext() {
+                return lines.hasNext();
+            }
+
+            @Override
+            public CasbinRule next() {
+                return encode(lines.next());
+            }
+        };
+    }
+
+    /**
+     * decode returns the rule with the values of its ids, or null if one of them isn't known yet.
+     */
+    CasbinRule decode(CasbinRule line) {
+        String[] ids = {line.getV0(), line.getV1(), line.getV2(), line.getV3(), line.getV4(), line.getV5()};
+        String[] decoded = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != null) {
+                decoded[i] = values.get(ids[i]);
+                if (decoded[i] == null) {
+                    return null;
+                }
+            }
+        }
+        return new CasbinRule(line.getPtype(), decoded[0], decoded[1], decoded[2], decoded[3], decoded[4], decoded[5]);
+    }
+
+    private String id(String value) {
+        if (value == null) {
+            return null;
+        }
+        String id = ids.get(value);
+        return id == null ? MISSING_ID : id;
+    }
+
+    private List<String> missingValues(Iterator<CasbinRule> lines) {
+        Set<String> missing = new LinkedHashSet<>();
+        while (lines.hasNext()) {
+            CasbinRule line = lines.next();
+            for (String value : new String[]{line.getV0(), line.getV1(), line.getV2(), line.getV3(), line.getV4(), line.getV5()}) {
+                if (value != null && !ids.containsKey(value)) {
+                    missing.add(value);
+                }
+            }
+        }
+        return new ArrayList<>(missing);
+    }
+
+    private void select(CasbinRuleDao casbinRuleDao, List<String> missing) {
+        for (int from = 0; from < missing.size(); from += VALUES_PER_QUERY) {
+            for (DictionaryEntry entry : casbinRuleDao.selectDictionaryEntries(table,
+                    missing.subList(from, Math.min(from + VALUES_PER_QUERY, missing.size())))) {
+                put(entry);
+            }
+        }
+    }
+
+    private void put(DictionaryEntry entry) {
+        String id = String.valueOf(entry.getId());
+        String value = values.computeIfAbsent(id, key -> entry.getVal());
+        ids.putIfAbsent(value, id);
+    }
+}
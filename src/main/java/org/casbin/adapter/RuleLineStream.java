@@ -0,0 +1,63 @@
+package org.casbin.adapter;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+
+/**
+ * RuleLineStream encodes rules as UTF-8 text lines on demand, so a bulk import can read
+ * millions of rules without the whole file ever being built in memory.
+ */
+class RuleLineStream extends InputStream {
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final Iterator<CasbinRule> rules;
+    private final BiConsumer<StringBuilder, CasbinRule> format;
+    private final StringBuilder chunk = new StringBuilder(CHUNK_SIZE + 1024);
+    private byte[] buffer = new byte[0];
+    private int position = 0;
+
+    /**
+     * @param format appends one rule, with its line separator, to the builder.
+     */
+    RuleLineStream(Iterator<CasbinRule> rules, BiConsumer<StringBuilder, CasbinRule> format) {
+        this.rules = rules;
+        this.format = format;
+    }
+
+    @Override
+    public int read() {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.length - position);
+        System.arraycopy(buffer, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    private boolean fill() {
+        if (position < buffer.length) {
+            return true;
+        }
+        chunk.setLength(0);
+        while (chunk.length() < CHUNK_SIZE && rules.hasNext()) {
+            format.accept(chunk, rules.next());
+        }
+        buffer = chunk.toString().getBytes(StandardCharsets.UTF_8);
+        position = 0;
+        return buffer.length > 0;
+    }
+}
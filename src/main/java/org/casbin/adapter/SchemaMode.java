@@ -0,0 +1,18 @@
+package org.casbin.adapter;
+
+/**
+ * SchemaMode sets how the adapter manages its tables. The version of each table is recorded in the
+ * casbin_rule_schema table, so an adapter starting on an up-to-date schema runs no DDL at all.
+ */
+public enum SchemaMode {
+    /**
+     * MIGRATE creates the missing tables and migrates the outdated ones, then records their version.
+     */
+    MIGRATE,
+
+    /**
+     * VALIDATE runs no DDL, and fails if a table is missing or outdated,
+     * for databases whose schema is managed separately.
+     */
+    VALIDATE
+}
@@ -0,0 +1,26 @@
+package org.casbin.adapter;
+
+/**
+ * SchemaVersion is a row of the casbin_rule_schema table, the version of the schema of one of the tables
+ * of the adapter, or of an optional index like the unique index of the dedup mode.
+ */
+public class SchemaVersion {
+    String tableName;
+    int version;
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+}
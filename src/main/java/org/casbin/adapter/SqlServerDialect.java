@@ -0,0 +1,221 @@
+package org.casbin.adapter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SqlServerDialect is the dialect of SQL Server.
+ * Bulk saves stream the rules with SQLServerBulkCopy, and tables are renamed with sp_rename
+ * in the transaction of the swap, which SQL Server applies atomically.
+ */
+class SqlServerDialect implements Dialect {
+    private static final String[] COLUMNS = {"ptype", "v0", "v1", "v2", "v3", "v4", "v5"};
+
+    @Override
+    public void createDatabase(CasbinRuleDao casbinRuleDao, String databaseName) {
+        casbinRuleDao.createSqlServerDatabase(databaseName);
+    }
+
+    @Override
+    public void createTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createSqlServerTable(tableName, baseName, "VARCHAR(100)");
+    }
+
+    @Override
+    public void createIdTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createSqlServerTable(tableName, baseName, "INT");
+    }
+
+    @Override
+    public void createDictionaryTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createSqlServerDictionaryTable(tableName, baseName);
+    }
+
+    @Override
+    public void createChangeLogTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createSqlServerChangeLogTable(tableName);
+    }
+
+    @Override
+    public void createRevisionTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createSqlServerRevisionTable(tableName);
+    }
+
+    @Override
+    public void createSchemaTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createSqlServerSchemaTable(tableName);
+    }
+
+    @Override
+    public void addRuleKeys(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.addSqlServerRuleKeys(tableName, baseName);
+    }
+
+    /**
+     * createUniqueIndex indexes (ptype, v0..v5), in which SQL Server considers NULLs equal.
+     * With a case-insensitive collation, rules that only differ in case are duplicates.
+     */
+    @Override
+    public void createUniqueIndex(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.createSqlServerUniqueIndex(tableName, baseName);
+    }
+
+    @Override
+    public void upsertRules(CasbinRuleDao casbinRuleDao, String tableName, List<CasbinRule> rules) {
+        casbinRuleDao.mergeSqlServerBatch(tableName, rules);
+    }
+
+    @Override
+    public void dropTable(CasbinRuleDao casbinRuleDao, String tableName, String baseName) {
+        casbinRuleDao.dropSqlServerTable(tableName);
+    }
+
+    @Override
+    public Long selectIdAtOffset(CasbinRuleDao casbinRuleDao, String tableName, long offset) {
+        return casbinRuleDao.selectIdAtOffsetFetch(tableName, offset);
+    }
+
+    @Override
+    public int getMaxRowsPerStatement() {
+        // SQL Server accepts at most 2100 parameters per statement.
+        return 2100 / 7 - 1;
+    }
+
+    @Override
+    public long bulkInsert(Connection connection, String tableName, Iterator<CasbinRule> rules, int batchSize) throws SQLException {
+        // mssql-jdbc is only needed at runtime, so its bulk copy API is called by reflection.
+        ClassLoader loader = connection.getClass().getClassLoader();
+        try {
+            Class<?> connectionType = Class.forName("com.microsoft.sqlserver.jdbc.ISQLServerConnection", true, loader);
+            Class<?> bulkCopyType = Class.forName("com.microsoft.sqlserver.jdbc.SQLServerBulkCopy", true, loader);
+            Class<?> optionsType = Class.forName("com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions", true, loader);
+
+            Object options = optionsType.getConstructor().newInstance();
+            optionsType.getMethod("setBatchSize", int.class).invoke(options, batchSize);
+            optionsType.getMethod("setTableLock", boolean.class).invoke(options, true);
+
+            Object bulkCopy = bulkCopyType.getConstructor(Connection.class).newInstance(connection.unwrap(connectionType));
+            try {
+                bulkCopyType.getMethod("setBulkCopyOptions", optionsType).invoke(bulkCopy, options);
+                bulkCopyType.getMethod("setDestinationTableName", String.class).invoke(bulkCopy, tableName);
+                // Columns are mapped by name, since the id column comes last in tables migrated from version 1.
+                Method addColumnMapping = bulkCopyType.getMethod("addColumnMapping", int.class, String.class);
+                for (int i = 0; i < COLUMNS.length; i++) {
+                    addColumnMapping.invoke(bulkCopy, i + 1, COLUMNS[i]);
+                }
+                Method writeToServer = findWriteToServer(bulkCopyType);
+                Class<?> recordType = writeToServer.getParameterTypes()[0];
+                CasbinRule[] current = new CasbinRule[1];
+                long[] rows = new long[1];
+                writeToServer.invoke(bulkCopy, Proxy.newProxyInstance(loader, new Class<?>[]{recordType},
+                        (proxy, method, args) -> invokeRecord(proxy, method, args, rules, current, rows)));
+                return rows[0];
+            } finally {
+                bulkCopyType.getMethod("close").invoke(bulkCopy);
+            }
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Failed to bulk copy the rules", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new SQLException("The JDBC driver doesn't support bulk copy", e);
+        }
+    }
+
+    /**
+     * replaceTables renames the tables with sp_rename, in the transaction committed by the adapter.
+     * Index names are unique per table on SQL Server, so they don't need to be renamed.
+     */
+    @Override
+    public void replaceTables(CasbinRuleDao casbinRuleDao, List<TableSwap> swaps) {
+        for (TableSwap swap : swaps) {
+            casbinRuleDao.renameSqlServerTable(swap.getTable(), swap.getOldBaseName());
+            casbinRuleDao.renameSqlServerTable(swap.getStagingTable(), swap.getBaseName());
+        }
+        for (TableSwap swap : swaps) {
+            casbinRuleDao.dropSqlServerTable(swap.getOldTable());
+        }
+    }
+
+    /**
+     * findWriteToServer finds writeToServer(ISQLServerBulkData), or writeToServer(ISQLServerBulkRecord) on older drivers.
+     */
+    private static Method findWriteToServer(Class<?> bulkCopyType) throws NoSuchMethodException {
+        Method found = null;
+        for (Method method : bulkCopyType.getMethods()) {
+            Class<?>[] parameters = method.getParameterTypes();
+            if (method.getName().equals("writeToServer") && parameters.length == 1 && parameters[0].isInterface()
+                    && !ResultSet.class.isAssignableFrom(parameters[0])) {
+                if (found == null || parameters[0].isAssignableFrom(found.getParameterTypes()[0])) {
+                    found = method;
+                }
+            }
+        }
+        if (found == null) {
+            throw new NoSuchMethodException("SQLServerBulkCopy.writeToServer");
+        }
+        return found;
+    }
+
+    private static Object invokeRecord(Object proxy, Method method, Object[] args, Iterator<CasbinRule> rules,
+                                       CasbinRule[] current, long[] rows) {
+        switch (method.getName()) {
+            case "getColumnOrdinals":
+                Set<Integer> ordinals = new LinkedHashSet<>();
+                for (int i = 1; i <= COLUMNS.length; i++) {
+                    ordinals.add(i);
+                }
+                return ordinals;
+            case "getColumnName":
+                return COLUMNS[(Integer) args[0] - 1];
+            case "getColumnType":
+                return Types.VARCHAR;
+            case "getPrecision":
+                return 100;
+            case "getScale":
+                return 0;
+            case "isAutoIncrement":
+                return false;
+            case "next":
+                if (!rules.hasNext()) {
+                    return false;
+                }
+                current[0] = rules.next();
+                rows[0]++;
+                return true;
+            case "getRowData":
+                CasbinRule line = current[0];
+                return new Object[]{line.getPtype(), line.getV0(), line.getV1(), line.getV2(), line.getV3(), line.getV4(), line.getV5()};
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "CasbinRuleBulkRecord" + Arrays.toString(COLUMNS);
+            default:
+                return defaultValue(method.getReturnType());
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
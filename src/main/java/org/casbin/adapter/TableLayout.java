@@ -0,0 +1,23 @@
+package org.casbin.adapter;
+
+/**
+ * TableLayout sets how the policy rules are spread over tables.
+ */
+public enum TableLayout {
+    /**
+     * SINGLE stores all rules in one table, like casbin_rule.
+     */
+    SINGLE,
+
+    /**
+     * PER_SECTION stores the rules of each section in their own table,
+     * like casbin_rule_p for p, p2, .. and casbin_rule_g for g, g2, ..
+     */
+    PER_SECTION,
+
+    /**
+     * PER_PTYPE stores the rules of each ptype in their own table, like casbin_rule_p, casbin_rule_p2, casbin_rule_g.
+     * The table of a ptype is created when it is first written.
+     */
+    PER_PTYPE
+}
@@ -0,0 +1,62 @@
+package org.casbin.adapter;
+
+/**
+ * TableSwap names the tables involved in replacing a rule table by its staging table during a bulk save:
+ * the live table, like casbin_rule, the staging table it is replaced by, like casbin_rule_staging,
+ * and the name the live table is moved to before it is dropped, like casbin_rule_old.
+ * Table names are qualified with the schema, base names aren't.
+ */
+public final class TableSwap {
+    private final String schema;
+    private final String baseName;
+    private final boolean uniqueIndex;
+
+    TableSwap(String schema, String baseName, boolean uniqueIndex) {
+        this.schema = schema;
+        this.baseName = baseName;
+        this.uniqueIndex = uniqueIndex;
+    }
+
+    public String getBaseName() {
+        return baseName;
+    }
+
+    public String getStagingBaseName() {
+        return baseName + "_staging";
+    }
+
+    public String getOldBaseName() {
+        return baseName + "_old";
+    }
+
+    /**
+     * hasUniqueIndex returns whether the staging table has the unique index of the dedup mode, uk_ followed by its base name.
+     *
+     * @return whether there is a unique index to rename.
+     */
+    public boolean hasUniqueIndex() {
+        return uniqueIndex;
+    }
+
+    public String getTable() {
+        return qualify(getBaseName());
+    }
+
+    public String getStagingTable() {
+        return qualify(getStagingBaseName());
+    }
+
+    public String getOldTable() {
+        return qualify(getOldBaseName());
+    }
+
+    /**
+     * qualify returns the name of an object, like an index, in the schema of the tables.
+     *
+     * @param name the unqualified name.
+     * @return the qualified name.
+     */
+    public String qualify(String name) {
+        return schema == null ? name : schema + "." + name;
+    }
+}
@@ -0,0 +1,60 @@
+package org.casbin.adapter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ValueInterner maps equal rule values to one canonical String during a load,
+ * so rules loaded from millions of rows share the strings of their roles, domains and actions.
+ * It holds at most maxSize values; values seen after it is full are kept as they are.
+ * It can be used by several loading threads at the same time.
+ */
+class ValueInterner {
+    private final int maxSize;
+    private final ConcurrentHashMap<String, String> values;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    ValueInterner(int maxSize) {
+        this.maxSize = maxSize;
+        this.values = new ConcurrentHashMap<>(Math.min(maxSize, 1 << 12));
+    }
+
+    String intern(String value) {
+        lookups.increment();
+        String canonical = values.get(value);
+        if (canonical == null) {
+            if (values.size() >= maxSize) {
+                return value;
+            }
+            canonical = values.putIfAbsent(value, value);
+            if (canonical == null) {
+                return value;
+            }
+        }
+        if (canonical != value) {
+            bytesSaved.add(estimateSize(value));
+        }
+        return canonical;
+    }
+
+    long getLookups() {
+        return lookups.sum();
+    }
+
+    int getDistinctValues() {
+        return values.size();
+    }
+
+    long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    /**
+     * estimateSize estimates the heap size of a String with compressed oops and compact strings:
+     * a 24 bytes String object and a byte array of 16 bytes of header plus one byte per character.
+     */
+    static long estimateSize(String value) {
+        return 24 + ((16 + value.length() + 7) & ~7L);
+    }
+}
@@ -0,0 +1,228 @@
+package org.casbin.adapter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * WriteBehindBuffer queues single rule additions and removals and writes them in one transaction.
+ * An addition followed by a removal of the same rule cancels out, and a removal followed by
+ * an addition becomes a delete and an insert of the rule in the same flush.
+ *
+ * With waitForCommit, a call returns once the transaction containing its change has committed.
+ * Concurrent callers share the same transaction: the first one to get the flush lock writes
+ * everything queued so far, and the others find their change already committed.
+ * Without waitForCommit, a call returns immediately, and the queue is written when it reaches
+ * maxPending rules, every maxDelayMillis, or on flush(). Changes still queued are lost if the process dies.
+ * The changes of a failed flush are queued again, before the changes made since, and written by the next flush,
+ * as the enforcer already has them. With waitForCommit, their callers get the error instead, so they are dropped.
+ */
+class WriteBehindBuffer {
+    private enum Op {
+        ADD, REMOVE, REPLACE
+    }
+
+    private static class Pending {
+        final CasbinRule line;
+        Op op;
+
+        Pending(CasbinRule line, Op op) {
+            this.line = line;
+            this.op = op;
+        }
+    }
+
+    private final int maxPending;
+    private final boolean waitForCommit;
+    private final BiConsumer<List<CasbinRule>, List<CasbinRule>> writer;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService timer;
+
+    private Map<List<String>, Pending> pending = new LinkedHashMap<>();
+    private CompletableFuture<Void> committed = new CompletableFuture<>();
+    private volatile RuntimeException backgroundError;
+
+    /**
+     * @param writer writes the removed rules, then the added rules, in one transaction.
+     */
+    WriteBehindBuffer(int maxPending, long maxDelayMillis, boolean waitForCommit,
+                      BiConsumer<List<CasbinRule>, List<CasbinRule>> writer) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Max pending rules must be positive: " + maxPending);
+        }
+        this.maxPending = maxPending;
+        this.waitForCommit = waitForCommit;
+        this.writer = writer;
+        if (!waitForCommit && maxDelayMillis > 0) {
+            this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "casbin-adapter-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.timer.scheduleWithFixedDelay(this::flushInBackground, maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.timer = null;
+        }
+    }
+
+    void add(CasbinRule line) {
+        submit(line, Op.ADD);
+    }
+
+    void remove(CasbinRule line) {
+        submit(line, Op.REMOVE);
+    }
+
+    /**
+     * flush writes all queued changes, and throws the error of a failed background flush
+     * if its changes are still not written.
+     */
+    void flush() {
+        flushLock.lock();
+        try {
+            flushLocked();
+        } finally {
+            flushLock.unlock();
+        }
+        RuntimeException error = backgroundError;
+        if (error != null) {
+            backgroundError = null;
+            throw error;
+        }
+    }
+
+    void close() {
+        if (timer != null) {
+            timer.shutdown();
+        }
+        flush();
+    }
+
+    private void submit(CasbinRule line, Op op) {
+        CompletableFuture<Void> batch;
+        boolean full;
+        synchronized (this) {
+            List<String> key = MybatisAdapter.ruleKey(line);
+            Pending queued = pending.get(key);
+            if (queued == null) {
+                pending.put(key, new Pending(line, op));
+            } else {
+                queued.op = merge(queued.op, op);
+                if (queued.op == null) {
+                    pending.remove(key);
+                }
+            }
+            batch = committed;
+            full = pending.size() >= maxPending;
+        }
+
+        if (waitForCommit) {
+            flushLock.lock();
+            try {
+                if (!batch.isDone()) {
+                    flushLocked();
+                }
+            } finally {
+                flushLock.unlock();
+            }
+            try {
+                batch.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        } else if (full) {
+            flush();
+        }
+    }
+
+    private void flushLocked() {
+        Map<List<String>, Pending> batch;
+        CompletableFuture<Void> done;
+        synchronized (this) {
+            batch = pending;
+            done = committed;
+            pending = new LinkedHashMap<>();
+            committed = new CompletableFuture<>();
+        }
+        if (batch.isEmpty()) {
+            done.complete(null);
+            return;
+        }
+
+        List<CasbinRule> removed = new ArrayList<>();
+        List<CasbinRule> added = new ArrayList<>();
+        for (Pending change : batch.values()) {
+            if (change.op != Op.ADD) {
+                removed.add(change.line);
+            }
+            if (change.op != Op.REMOVE) {
+                added.add(change.line);
+            }
+        }
+        try {
+            writer.accept(removed, added);
+            backgroundError = null;
+            done.complete(null);
+        } catch (RuntimeException e) {
+            if (!waitForCommit) {
+                requeue(batch);
+            }
+            done.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * requeue queues the changes of a failed flush again, before the changes queued since,
+     * which are applied on top of them as if they had been queued after them.
+     */
+    private synchronized void requeue(Map<List<String>, Pending> batch) {
+        Map<List<String>, Pending> newer = pending;
+        pending = batch;
+        for (Map.Entry<List<String>, Pending> entry : newer.entrySet()) {
+            Pending queued = batch.get(entry.getKey());
+            if (queued == null) {
+                batch.put(entry.getKey(), entry.getValue());
+            } else {
+                queued.op = merge(queued.op, entry.getValue().op);
+                if (queued.op == null) {
+                    batch.remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * merge returns the change of a rule changed by op after queued, or null if they cancel out.
+     */
+    private static Op merge(Op queued, Op op) {
+        switch (op) {
+            case REMOVE:
+                return queued == Op.ADD ? null : Op.REMOVE;
+            case ADD:
+                return queued == Op.REMOVE ? Op.REPLACE : queued;
+            default:
+                // The removal cancels a queued addition, and the rule is added again.
+                return queued == Op.ADD ? Op.ADD : Op.REPLACE;
+        }
+    }
+
+    private void flushInBackground() {
+        flushLock.lock();
+        try {
+            flushLocked();
+        } catch (RuntimeException e) {
+            backgroundError = e;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+}
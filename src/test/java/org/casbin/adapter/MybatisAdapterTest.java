@@ -1,13 +1,46 @@
 package org.casbin.adapter;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.casbin.jcasbin.exception.CasbinAdapterException;
 import org.casbin.jcasbin.main.Enforcer;
+import org.casbin.jcasbin.model.Model;
 import org.casbin.jcasbin.util.Util;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class MybatisAdapterTest {
@@ -141,4 +174,1105 @@ public class MybatisAdapterTest {
         testEnforce(e, "data2_admin", "data2", "read", true);
         testEnforce(e, "data2_admin", "data2", "write", true);
     }
+
+    @Test
+    public void testLoadPolicyStreaming() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+
+        MybatisAdapter a = new MybatisAdapter(DRIVER, URL, USERNAME, PASSWORD);
+        a.savePolicy(e.getModel());
+
+        // Stream the rows one by one instead of buffering the whole result set.
+        a.setFetchSize(Integer.MIN_VALUE);
+        e.clearPolicy();
+        a.loadPolicy(e.getModel());
+        testGetPolicy(e, asList(
+                asList("alice", "data1", "read"),
+                asList("bob", "data2", "write"),
+                asList("data2_admin", "data2", "read"),
+                asList("data2_admin", "data2", "write")));
+        e.buildRoleLinks();
+        testEnforce(e, "alice", "data2", "read", true);
+    }
+
+    @Test
+    public void testLoadFilteredPolicy() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+
+        MybatisAdapter a = new MybatisAdapter(DRIVER, URL, USERNAME, PASSWORD);
+        a.savePolicy(e.getModel());
+
+        e = new Enforcer("examples/rbac_model.conf", a);
+        e.loadFilteredPolicy(new CasbinRuleFilter().ptype("p").field(0, "alice", "bob"));
+        assertTrue(e.isFiltered());
+        testGetPolicy(e, asList(
+                asList("alice", "data1", "read"),
+                asList("bob", "data2", "write")));
+        assertTrue(e.getGroupingPolicy().isEmpty());
+
+        e.loadFilteredPolicy(new CasbinRuleFilter().fieldPrefix(0, "data2_").field(2, "write"));
+        testGetPolicy(e, asList(
+                asList("data2_admin", "data2", "write")));
+
+        e.loadPolicy();
+        assertFalse(e.isFiltered());
+    }
+
+    @Test
+    public void testSavePolicyDiff() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+
+        MybatisAdapter a = new MybatisAdapter(DRIVER, URL, USERNAME, PASSWORD);
+        a.setBatchSize(2);
+        a.savePolicy(e.getModel());
+
+        // Only the removed and the added rules are written.
+        a.setDiffSave(true);
+        e.removePolicy("bob", "data2", "write");
+        e.addPolicy("cathy", "data3", "read");
+        a.savePolicy(e.getModel());
+
+        e.clearPolicy();
+        a.loadPolicy(e.getModel());
+        testGetPolicy(e, asList(
+                asList("alice", "data1", "read"),
+                asList("data2_admin", "data2", "read"),
+                asList("data2_admin", "data2", "write"),
+                asList("cathy", "data3", "read")));
+        assertEquals(asList(asList("alice", "data2_admin")), e.getGroupingPolicy());
+    }
+
+    @Test
+    public void testRemovePoliciesWithCounts() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+
+        MybatisAdapter a = new MybatisAdapter(DRIVER, URL, USERNAME, PASSWORD);
+        a.savePolicy(e.getModel());
+
+        int[] counts = a.removePoliciesWithCounts("p", "p", asList(
+                asList("alice", "data1", "read"),
+                asList("data2_admin", "data2"),
+                asList("cathy", "data3", "read")));
+        assertArrayEquals(new int[]{1, 2, 0}, counts);
+
+        e.clearPolicy();
+        a.loadPolicy(e.getModel());
+        testGetPolicy(e, asList(
+                asList("bob", "data2", "write")));
+    }
+
+    @Test
+    public void testRemoveFilteredPolicy() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+
+        MybatisAdapter a = new MybatisAdapter(DRIVER, URL, USERNAME, PASSWORD);
+        a.savePolicy(e.getModel());
+
+        // The values start at v1, and "" doesn't match the field.
+        assertEquals(3, a.removeFilteredPolicyWithCount("p", "p", 1, "data2", ""));
+
+        a.savePolicy(e.getModel());
+        int[] counts = a.removeFilteredPolicies("p", "p", 1, asList(
+                asList("data1", "read"),
+                asList("", "write"),
+                asList("data3")));
+        assertArrayEquals(new int[]{1, 2, 0}, counts);
+
+        e.clearPolicy();
+        a.loadPolicy(e.getModel());
+        testGetPolicy(e, asList(
+                asList("data2_admin", "data2", "read")));
+        a.close();
+    }
+
+    @Test
+    public void testAddPoliciesChunked() {
+        MybatisAdapter a = new MybatisAdapter(DRIVER, URL, USERNAME, PASSWORD);
+        Enforcer e = new Enforcer("examples/rbac_model.conf", a);
+        e.clearPolicy();
+        a.savePolicy(e.getModel());
+
+        // 2500 rules are written as 300-row statements, flushed every 1000 rows.
+        a.setBatchSize(1000);
+        a.setMaxRowsPerStatement(300);
+        List<List<String>> rules = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            rules.add(asList("user" + i, "data" + i, "read"));
+        }
+        a.addPolicies("p", "p", rules);
+
+        a.loadPolicy(e.getModel());
+        assertEquals(2500, e.getPolicy().size());
+        testEnforce(e, "user2499", "data2499", "read", true);
+    }
+
+    @Test
+    public void testUpdatePolicy() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+
+        MybatisAdapter a = new MybatisAdapter(DRIVER, URL, USERNAME, PASSWORD);
+        a.savePolicy(e.getModel());
+
+        e = new Enforcer("examples/rbac_model.conf", a);
+        e.updatePolicy(asList("alice", "data1", "read"), asList("alice", "data1", "write"));
+        a.updatePolicies("p", "p",
+                asList(asList("data2_admin", "data2", "read"), asList("data2_admin", "data2", "write")),
+                asList(asList("data3_admin", "data3", "read"), asList("data3_admin", "data3", "write")));
+        List<List<String>> oldRules = a.updateFilteredPolicies("p", "p",
+                asList(asList("bob", "data3", "read")), 0, "bob");
+        assertEquals(asList(asList("bob", "data2", "write")), oldRules);
+
+        e.clearPolicy();
+        a.loadPolicy(e.getModel());
+        testGetPolicy(e, asList(
+                asList("alice", "data1", "write"),
+                asList("data3_admin", "data3", "read"),
+                asList("data3_admin", "data3", "write"),
+                asList("bob", "data3", "read")));
+
+        // Only the rule itself is updated, not a longer rule starting with its values.
+        a.addPolicies("g", "g", asList(asList("alice", "admin"), asList("alice", "admin", "domain1")));
+        a.updatePolicy("g", "g", asList("alice", "admin"), asList("alice", "editor"));
+        Model model = new Model();
+        model.loadModel("examples/rbac_model.conf");
+        a.loadPolicy(model);
+        assertEquals(asList(asList("alice", "data2_admin"), asList("alice", "editor"), asList("alice", "admin", "domain1")),
+                model.model.get("g").get("g").policy);
+    }
+
+    @Test
+    public void testDataSourceAndBuilder() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+
+        // Share an existing connection pool with the adapter.
+        PooledDataSource dataSource = new PooledDataSource(DRIVER, URL + "casbin", USERNAME, PASSWORD);
+        MybatisAdapter a = new MybatisAdapter(dataSource);
+        a.savePolicy(e.getModel());
+        a.close();
+
+        a = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .poolSize(4, 2)
+                .poolValidation("SELECT 1", 60000)
+                .driverProperty("cachePrepStmts", "true")
+                .batchSize(2)
+                .build();
+        e = new Enforcer("examples/rbac_model.conf", a);
+        testGetPolicy(e, asList(
+                asList("alice", "data1", "read"),
+                asList("bob", "data2", "write"),
+                asList("data2_admin", "data2", "read"),
+                asList("data2_admin", "data2", "write")));
+        a.close();
+
+        // The shared pool is still usable after the adapter is closed.
+        a = MybatisAdapter.builder().dataSource(dataSource).build();
+        e = new Enforcer("examples/rbac_model.conf", a);
+        testEnforce(e, "alice", "data2", "read", true);
+        dataSource.forceCloseAll();
+    }
+
+    @Test
+    public void testLoadIncrementalPolicy() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+
+        MybatisAdapter a = MybatisAdapter.builder().jdbc(DRIVER, URL, USERNAME, PASSWORD).changeLog(true).build();
+        a.savePolicy(e.getModel());
+
+        // Another node loads the whole policy once and remembers the watermark.
+        MybatisAdapter other = MybatisAdapter.builder().jdbc(DRIVER, URL, USERNAME, PASSWORD).changeLog(true).build();
+        long revision = other.getCurrentRevision();
+        Enforcer otherEnforcer = new Enforcer("examples/rbac_model.conf", other);
+
+        e = new Enforcer("examples/rbac_model.conf", a);
+        e.addPolicy("cathy", "data3", "read");
+        e.removePolicy("bob", "data2", "write");
+        e.addGroupingPolicy("cathy", "data2_admin");
+
+        revision = other.loadIncrementalPolicy(otherEnforcer.getModel(), revision);
+        otherEnforcer.buildRoleLinks();
+        assertEquals(a.getCurrentRevision(), revision);
+        testGetPolicy(otherEnforcer, asList(
+                asList("alice", "data1", "read"),
+                asList("data2_admin", "data2", "read"),
+                asList("data2_admin", "data2", "write"),
+                asList("cathy", "data3", "read")));
+        testEnforce(otherEnforcer, "cathy", "data2", "write", true);
+
+        // Nothing changed since the last watermark.
+        assertEquals(revision, other.loadIncrementalPolicy(otherEnforcer.getModel(), revision));
+
+        // A full save makes the next incremental load reload the whole policy.
+        e.clearPolicy();
+        e.addPolicy("dave", "data4", "read");
+        a.savePolicy(e.getModel());
+        other.loadIncrementalPolicy(otherEnforcer.getModel(), revision);
+        testGetPolicy(otherEnforcer, asList(
+                asList("dave", "data4", "read")));
+    }
+
+    @Test
+    public void testLoadIncrementalPolicyWithLateCommit() throws SQLException {
+        PooledDataSource dataSource = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:incremental;DB_CLOSE_DELAY=-1", "sa", "");
+        MybatisAdapter a = MybatisAdapter.builder().dataSource(dataSource).changeLog(true).build();
+        a.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+        Enforcer e = new Enforcer("examples/rbac_model.conf", a);
+        long revision = a.getCurrentRevision();
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            // A change gets its revision first, but commits after a later one.
+            connection.setAutoCommit(false);
+            statement.execute("INSERT INTO casbin_rule (ptype, v0, v1, v2) VALUES ('p', 'late', 'data9', 'read')");
+            statement.execute("INSERT INTO casbin_rule_log (op, field_index, ptype, v0, v1, v2) VALUES ('a', 0, 'p', 'late', 'data9', 'read')");
+            a.addPolicy("p", "p", asList("cathy", "data3", "read"));
+            a.removePolicy("p", "p", asList("cathy", "data3", "read"));
+            a.addPolicy("p", "p", asList("cathy", "data3", "read"));
+
+            long watermark = a.loadIncrementalPolicy(e.getModel(), revision);
+            assertEquals(revision, watermark);
+            testGetPolicy(e, asList(
+                    asList("alice", "data1", "read"),
+                    asList("bob", "data2", "write"),
+                    asList("data2_admin", "data2", "read"),
+                    asList("data2_admin", "data2", "write"),
+                    asList("cathy", "data3", "read")));
+            connection.commit();
+
+            // The late change is read by the next call, and the changes already applied are not replayed.
+            a.addPolicy("p", "p", asList("erin", "data5", "read"));
+            watermark = a.loadIncrementalPolicy(e.getModel(), watermark);
+            assertEquals(a.getCurrentRevision(), watermark);
+            testGetPolicy(e, asList(
+                    asList("alice", "data1", "read"),
+                    asList("bob", "data2", "write"),
+                    asList("data2_admin", "data2", "read"),
+                    asList("data2_admin", "data2", "write"),
+                    asList("cathy", "data3", "read"),
+                    asList("late", "data9", "read"),
+                    asList("erin", "data5", "read")));
+        }
+        a.close();
+        dataSource.forceCloseAll();
+    }
+
+    @Test
+    public void testMetrics() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MybatisAdapter a = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .metrics(new MicrometerAdapterMetrics(registry, "name", "casbin"))
+                .build();
+        a.savePolicy(e.getModel());
+        e = new Enforcer("examples/rbac_model.conf", a);
+        e.addPolicy("cathy", "data3", "read");
+        e.removePolicy("cathy", "data3", "read");
+
+        assertEquals(1, registry.get("casbin.adapter.operation").tag("operation", "savePolicy").timer().count());
+        assertEquals(5, registry.get("casbin.adapter.rows").tag("operation", "savePolicy").counter().count(), 0);
+        assertEquals(5, registry.get("casbin.adapter.rows").tag("operation", "loadPolicy").counter().count(), 0);
+        assertEquals(1, registry.get("casbin.adapter.rows").tag("operation", "removePolicy").counter().count(), 0);
+        assertTrue(registry.get("casbin.adapter.session").timer().count() >= 4);
+        assertTrue(registry.get("casbin.adapter.pool.requests").gauge().value() > 0);
+        a.close();
+
+        JmxAdapterMetrics jmx = new JmxAdapterMetrics("casbin-test");
+        a = MybatisAdapter.builder().jdbc(DRIVER, URL, USERNAME, PASSWORD).metrics(jmx).build();
+        e = new Enforcer("examples/rbac_model.conf", a);
+        try {
+            a.removeFilteredPolicy("p", "p", 0, "no_such_user", "data1", "read", "extra", "extra", "extra", "extra");
+            fail("Removing with more than 6 field values should fail");
+        } catch (RuntimeException expected) {
+            // The error is counted.
+        }
+
+        OperationStatisticsMXBean load = jmx.getStatistics("loadPolicy");
+        assertNotNull(load);
+        assertEquals(1, load.getCount());
+        assertEquals(5, load.getRows());
+        assertTrue(load.getP99Millis() >= load.getP50Millis());
+        assertEquals(1, jmx.getStatistics("removeFilteredPolicy").getErrorCount());
+        a.close();
+        jmx.close();
+    }
+
+    @Test
+    public void testAsync() throws InterruptedException {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+
+        // Tasks are only queued, so the test decides when they run.
+        BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+        MybatisAdapter a = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .asyncExecutor(tasks::add)
+                .maxInFlight(2)
+                .build();
+        CompletableFuture<Void> saved = a.savePolicyAsync(e.getModel());
+        tasks.take().run();
+        saved.join();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        futures.add(a.addPolicyAsync("p", "p", asList("cathy", "data3", "read")));
+        futures.add(a.addPolicyAsync("p", "p", asList("dave", "data4", "read")));
+
+        // The third operation waits until one of the two in flight completes.
+        Thread third = new Thread(() -> futures.add(a.addPolicyAsync("p", "p", asList("eve", "data5", "read"))));
+        third.start();
+        third.join(200);
+        assertTrue(third.isAlive());
+        assertEquals(2, tasks.size());
+
+        tasks.take().run();
+        third.join();
+        tasks.take().run();
+        tasks.take().run();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        CompletableFuture<int[]> removed = a.removePoliciesAsync("p", "p", asList(
+                asList("eve", "data5", "read"),
+                asList("nobody", "data0", "read")));
+        tasks.take().run();
+        assertArrayEquals(new int[]{1, 0}, removed.join());
+
+        Enforcer loaded = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        loaded.clearPolicy();
+        CompletableFuture<Void> load = a.loadPolicyAsync(loaded.getModel());
+        tasks.take().run();
+        load.join();
+        assertEquals(6, loaded.getPolicy().size());
+        a.close();
+
+        CompletableFuture<Void> afterClose = a.addPolicyAsync("p", "p", asList("frank", "data6", "read"));
+        assertTrue(afterClose.isCompletedExceptionally());
+        try {
+            afterClose.join();
+            fail("An operation submitted after close must be rejected");
+        } catch (CompletionException expected) {
+            assertTrue(expected.getCause() instanceof RejectedExecutionException);
+        }
+        assertTrue(tasks.isEmpty());
+
+        // An operation is in flight from its submit until it completes, and submits wait at the limit.
+        BlockingQueue<Runnable> queued = new LinkedBlockingQueue<>();
+        AsyncRunner runner = new AsyncRunner(queued::add, 2);
+        CompletableFuture<Void> first = runner.run(() -> {
+        });
+        runner.run(() -> {
+        });
+        assertEquals(2, runner.getInFlight());
+        Thread blocked = new Thread(() -> runner.run(() -> {
+        }));
+        blocked.start();
+        blocked.join(200);
+        assertTrue(blocked.isAlive());
+        queued.take().run();
+        first.join();
+        blocked.join();
+        assertEquals(2, runner.getInFlight());
+        queued.take().run();
+        queued.take().run();
+        assertEquals(0, runner.getInFlight());
+        runner.close();
+    }
+
+    @Test
+    public void testWriteBehind() throws InterruptedException {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        MybatisAdapter reader = new MybatisAdapter(DRIVER, URL, USERNAME, PASSWORD);
+        reader.savePolicy(e.getModel());
+
+        MybatisAdapter a = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .writeBehind(100, 0, false)
+                .build();
+        e = new Enforcer("examples/rbac_model.conf", a);
+        e.addPolicy("cathy", "data3", "read");
+        e.removePolicy("cathy", "data3", "read");
+        e.addPolicy("dave", "data4", "read");
+        e.removePolicy("bob", "data2", "write");
+
+        // Nothing is written until the queue is flushed.
+        Enforcer other = new Enforcer("examples/rbac_model.conf", reader);
+        testEnforce(other, "dave", "data4", "read", false);
+        testEnforce(other, "bob", "data2", "write", true);
+
+        a.flush();
+        other.loadPolicy();
+        testGetPolicy(other, asList(
+                asList("alice", "data1", "read"),
+                asList("data2_admin", "data2", "read"),
+                asList("data2_admin", "data2", "write"),
+                asList("dave", "data4", "read")));
+        a.close();
+
+        // With waitForCommit, concurrent calls share transactions and return once committed.
+        a = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .writeBehind(100, 0, true)
+                .build();
+        MybatisAdapter writer = a;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String user = "user" + i;
+            Thread thread = new Thread(() -> writer.addPolicy("p", "p", asList(user, "data1", "read")));
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        other.loadPolicy();
+        assertEquals(4 + 8, other.getPolicy().size());
+        a.close();
+
+        // The changes of a failed flush are written by the next one, merged with the changes made since.
+        List<List<CasbinRule>> writes = new ArrayList<>();
+        boolean[] down = {true};
+        WriteBehindBuffer buffer = new WriteBehindBuffer(100, 0, false, (removedRules, addedRules) -> {
+            if (down[0]) {
+                down[0] = false;
+                throw new IllegalStateException("The database is down");
+            }
+            writes.add(removedRules);
+            writes.add(addedRules);
+        });
+        CasbinRule cathy = new CasbinRule("p", "cathy", "data3", "read", null, null, null);
+        CasbinRule dave = new CasbinRule("p", "dave", "data4", "read", null, null, null);
+        CasbinRule erin = new CasbinRule("p", "erin", "data5", "read", null, null, null);
+        CasbinRule frank = new CasbinRule("p", "frank", "data6", "read", null, null, null);
+        buffer.add(cathy);
+        buffer.add(dave);
+        buffer.remove(erin);
+        try {
+            buffer.flush();
+            fail("The first flush must fail");
+        } catch (IllegalStateException expected) {
+            // The changes are queued again.
+        }
+        buffer.remove(cathy);
+        buffer.add(erin);
+        buffer.add(frank);
+        buffer.flush();
+        assertEquals(asList(asList(erin), asList(dave, erin, frank)), writes);
+    }
+
+    @Test
+    public void testLoadPolicyParallel() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        for (int i = 0; i < 500; i++) {
+            e.addPolicy("user" + (i % 50), "data" + i, "read");
+            e.addGroupingPolicy("user" + i, "data2_admin");
+        }
+        MybatisAdapter a = new MybatisAdapter(DRIVER, URL, USERNAME, PASSWORD);
+        a.savePolicy(e.getModel());
+        // Re-added rules move to the end, out of the order of v0.
+        a.removePolicy("p", "p", asList("user0", "data0", "read"));
+        a.addPolicy("p", "p", asList("user0", "data0", "read"));
+
+        // The rules are loaded in the same order as without parallelism, the order they were inserted in.
+        Enforcer serial = new Enforcer("examples/rbac_model.conf", a);
+        a.setLoadParallelism(4);
+        Enforcer loaded = new Enforcer("examples/rbac_model.conf", a);
+        assertEquals(serial.getPolicy(), loaded.getPolicy());
+        assertEquals(serial.getGroupingPolicy(), loaded.getGroupingPolicy());
+        assertEquals(asList("user0", "data0", "read"), loaded.getPolicy().get(loaded.getPolicy().size() - 1));
+        assertEquals(e.getPolicy().size(), loaded.getPolicy().size());
+        testEnforce(loaded, "user42", "data2", "write", true);
+
+        // The order only depends on the data, not on which partition finishes first.
+        Enforcer again = new Enforcer("examples/rbac_model.conf", a);
+        assertEquals(loaded.getPolicy(), again.getPolicy());
+        a.close();
+    }
+
+    @Test
+    public void testSnapshotCache() throws IOException {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        Path snapshot = Files.createTempDirectory("casbin").resolve("policy.snapshot");
+
+        MybatisAdapter a = MybatisAdapter.builder().jdbc(DRIVER, URL, USERNAME, PASSWORD).snapshotFile(snapshot).build();
+        a.savePolicy(e.getModel());
+        assertTrue(Files.exists(snapshot));
+
+        // A change that doesn't increment the revision isn't seen, which shows the policy comes from the file.
+        MybatisAdapter plain = new MybatisAdapter(DRIVER, URL, USERNAME, PASSWORD);
+        plain.removePolicy("p", "p", asList("alice", "data1", "read"));
+        MybatisAdapter b = MybatisAdapter.builder().jdbc(DRIVER, URL, USERNAME, PASSWORD).snapshotFile(snapshot).build();
+        Enforcer other = new Enforcer("examples/rbac_model.conf", b);
+        testEnforce(other, "alice", "data1", "read", true);
+        testEnforce(other, "alice", "data2", "write", true);
+
+        // A change through an adapter with a snapshot makes it stale, and the next load reads the database.
+        a.addPolicy("p", "p", asList("cathy", "data3", "read"));
+        other.loadPolicy();
+        testGetPolicy(other, asList(
+                asList("bob", "data2", "write"),
+                asList("data2_admin", "data2", "read"),
+                asList("data2_admin", "data2", "write"),
+                asList("cathy", "data3", "read")));
+
+        // A corrupted file is ignored.
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 0x55;
+        Files.write(snapshot, bytes);
+        plain.addPolicy("p", "p", asList("alice", "data1", "read"));
+        other.loadPolicy();
+        testEnforce(other, "alice", "data1", "read", true);
+        a.close();
+        b.close();
+        plain.close();
+    }
+
+    @Test
+    public void testInternValues() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        for (int i = 0; i < 100; i++) {
+            e.addPolicy("user" + i, "data1", "read");
+        }
+        MybatisAdapter a = new MybatisAdapter(DRIVER, URL, USERNAME, PASSWORD);
+        a.savePolicy(e.getModel());
+
+        JmxAdapterMetrics jmx = new JmxAdapterMetrics("casbin-intern-test");
+        a.setMetrics(jmx);
+        a.setMaxInternedValues(1000);
+        Enforcer loaded = new Enforcer("examples/rbac_model.conf", a);
+        List<List<String>> policy = loaded.getPolicy();
+        assertEquals(e.getPolicy().size(), policy.size());
+        assertSame(policy.get(0).get(2), policy.get(policy.size() - 1).get(2));
+        assertSame(policy.get(0).get(1), policy.get(policy.size() - 1).get(1));
+
+        // alice, bob, data2_admin, user0 to user99, data1, data2, read and write.
+        assertEquals(107, jmx.getStatistics("loadPolicy").getLastDistinctValues());
+        assertTrue(jmx.getStatistics("loadPolicy").getLastBytesSaved() > 0);
+        a.close();
+        jmx.close();
+    }
+
+    @Test
+    public void testTablePerPtype() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        MybatisAdapter a = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .tableName("authz_rule")
+                .tableLayout(TableLayout.PER_PTYPE)
+                .build();
+        a.savePolicy(e.getModel());
+
+        e = new Enforcer("examples/rbac_model.conf", a);
+        testGetPolicy(e, asList(
+                asList("alice", "data1", "read"),
+                asList("bob", "data2", "write"),
+                asList("data2_admin", "data2", "read"),
+                asList("data2_admin", "data2", "write")));
+        testEnforce(e, "alice", "data2", "read", true);
+
+        e.addPolicy("carol", "data3", "read");
+        e.removeFilteredGroupingPolicy(0, "alice");
+
+        // Each ptype has its own table, so a single table adapter on authz_rule_p only sees the p rules.
+        MybatisAdapter p = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .tableName("authz_rule_p")
+                .build();
+        Enforcer pe = new Enforcer("examples/rbac_model.conf", p);
+        assertEquals(5, pe.getPolicy().size());
+        assertTrue(pe.getGroupingPolicy().isEmpty());
+        p.close();
+
+        e = new Enforcer("examples/rbac_model.conf");
+        e.setAdapter(a);
+        e.loadFilteredPolicy(new CasbinRuleFilter().ptype("g"));
+        assertTrue(e.getPolicy().isEmpty());
+        assertTrue(e.getGroupingPolicy().isEmpty());
+
+        try {
+            MybatisAdapter.builder().jdbc(DRIVER, URL, USERNAME, PASSWORD).tableName("casbin_rule; drop table x").build();
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // Table names are put in the SQL, so they must be plain identifiers.
+        }
+        a.close();
+    }
+
+    @Test
+    public void testBulkSave() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        e.addPolicy("tab\tuser", "back\\slash", "quote\"d");
+        MybatisAdapter a = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .bulkSave(true)
+                .build();
+        a.savePolicy(e.getModel());
+        // The second save replaces the table created by the first one.
+        a.savePolicy(e.getModel());
+
+        Enforcer loaded = new Enforcer("examples/rbac_model.conf", a);
+        assertEquals(new HashSet<>(e.getPolicy()), new HashSet<>(loaded.getPolicy()));
+        assertEquals(e.getGroupingPolicy(), loaded.getGroupingPolicy());
+        a.close();
+
+        // H2 imports a CSV file, and renames the indexes of the staging tables.
+        PooledDataSource h2 = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:bulk;DB_CLOSE_DELAY=-1", "sa", "");
+        a = MybatisAdapter.builder()
+                .dataSource(h2)
+                .tableLayout(TableLayout.PER_SECTION)
+                .bulkSave(true)
+                .build();
+        a.savePolicy(e.getModel());
+        a.savePolicy(e.getModel());
+        loaded = new Enforcer("examples/rbac_model.conf", a);
+        assertEquals(new HashSet<>(e.getPolicy()), new HashSet<>(loaded.getPolicy()));
+        assertEquals(e.getGroupingPolicy(), loaded.getGroupingPolicy());
+        a.close();
+        h2.forceCloseAll();
+    }
+
+    @Test
+    public void testDedup() throws SQLException {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        // Start without the unique index left by a previous run.
+        PooledDataSource mysql = new PooledDataSource(DRIVER, URL + "casbin", USERNAME, PASSWORD);
+        try (Connection connection = mysql.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS casbin_dedup");
+            statement.execute("DROP TABLE IF EXISTS casbin_dedup_schema");
+        }
+        mysql.forceCloseAll();
+        MybatisAdapter a = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .tableName("casbin_dedup")
+                .build();
+        a.savePolicy(e.getModel());
+        // Duplicates within the batch are dropped, but without dedup the stored rule is written again.
+        a.addPolicies("p", "p", asList(asList("alice", "data1", "read"), asList("alice", "data1", "read")));
+        a.close();
+
+        // The duplicate stored before is removed when the unique index is created.
+        a = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .tableName("casbin_dedup")
+                .dedup(true)
+                .build();
+        a.addPolicy("p", "p", asList("alice", "data1", "read"));
+        a.addPolicies("p", "p", asList(asList("alice", "data1", "read"), asList("cathy", "data3", "read")));
+        a.addPolicies("p", "p", asList(asList("cathy", "data3", "read"), asList("cathy", "data3", "read")));
+        assertEquals(1, a.removeFilteredPolicyWithCount("p", "p", 0, "alice", "data1", "read"));
+        assertEquals(1, a.removeFilteredPolicyWithCount("p", "p", 0, "cathy", "data3", "read"));
+        a.close();
+
+        // Bulk saves load a staging table that has the rule_key column of the unique index.
+        a = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .tableName("casbin_dedup")
+                .dedup(true)
+                .bulkSave(true)
+                .build();
+        a.savePolicy(e.getModel());
+        a.addPolicy("p", "p", asList("bob", "data2", "write"));
+        assertEquals(1, a.removeFilteredPolicyWithCount("p", "p", 0, "bob", "data2", "write"));
+        a.close();
+
+        // H2 merges the rules, and bulk saves rename the unique index of the staging table.
+        PooledDataSource h2 = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:dedup;DB_CLOSE_DELAY=-1", "sa", "");
+        a = MybatisAdapter.builder()
+                .dataSource(h2)
+                .dedup(true)
+                .bulkSave(true)
+                .build();
+        a.savePolicy(e.getModel());
+        a.savePolicy(e.getModel());
+        a.addPolicies("p", "p", asList(asList("alice", "data1", "read"), asList("cathy", "data3", "read")));
+        a.addPolicy("g", "g", asList("alice", "data2_admin"));
+        assertEquals(1, a.removeFilteredPolicyWithCount("p", "p", 0, "alice", "data1", "read"));
+        assertEquals(1, a.removeFilteredPolicyWithCount("p", "p", 0, "cathy", "data3", "read"));
+        assertEquals(1, a.removeFilteredPolicyWithCount("g", "g", 0, "alice", "data2_admin"));
+        a.close();
+        h2.forceCloseAll();
+
+        assertEquals(new CasbinRule("p", "alice", "data1", "read", null, null, null),
+                new CasbinRule("p", "alice", "data1", "read", null, null, null));
+    }
+
+    @Test
+    public void testDictionary() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        // Values are compared case-sensitively, unlike the default MySQL collation.
+        e.addPolicy("Alice", "data1", "read");
+        MybatisAdapter a = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .tableName("casbin_encoded")
+                .dictionary(true)
+                .build();
+        a.savePolicy(e.getModel());
+
+        Enforcer loaded = new Enforcer("examples/rbac_model.conf", a);
+        assertEquals(new HashSet<>(e.getPolicy()), new HashSet<>(loaded.getPolicy()));
+        assertEquals(e.getGroupingPolicy(), loaded.getGroupingPolicy());
+        // Decoded values are shared by all rules.
+        List<String> objects = new ArrayList<>();
+        for (List<String> rule : loaded.getPolicy()) {
+            if (rule.get(1).equals("data2")) {
+                objects.add(rule.get(1));
+            }
+        }
+        assertSame(objects.get(0), objects.get(2));
+
+        loaded.loadFilteredPolicy(new CasbinRuleFilter().fieldPrefix(0, "data2_").field(2, "write"));
+        testGetPolicy(loaded, asList(asList("data2_admin", "data2", "write")));
+
+        // Another node adds values this adapter hasn't seen yet.
+        MybatisAdapter other = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .tableName("casbin_encoded")
+                .dictionary(true)
+                .build();
+        other.addPolicy("p", "p", asList("cathy", "data3", "read"));
+        other.close();
+        assertEquals(1, a.removeFilteredPolicyWithCount("p", "p", 1, "data3"));
+        assertEquals(0, a.removeFilteredPolicyWithCount("p", "p", 0, "nobody"));
+        a.updatePolicy("p", "p", asList("Alice", "data1", "read"), asList("Alice", "data4", "read"));
+        a.removePolicy("p", "p", asList("bob", "data2", "write"));
+        loaded.loadPolicy();
+        assertTrue(loaded.hasPolicy("Alice", "data4", "read"));
+        assertTrue(loaded.hasPolicy("alice", "data1", "read"));
+        assertFalse(loaded.hasPolicy("bob", "data2", "write"));
+        a.close();
+
+        // H2, with a table per section, diff saves and parallel loads.
+        PooledDataSource h2 = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:dictionary;DB_CLOSE_DELAY=-1", "sa", "");
+        a = MybatisAdapter.builder()
+                .dataSource(h2)
+                .tableLayout(TableLayout.PER_SECTION)
+                .dictionary(true)
+                .diffSave(true)
+                .loadParallelism(2)
+                .build();
+        a.savePolicy(e.getModel());
+        e.removePolicy("bob", "data2", "write");
+        e.addPolicy("bob", "data5", "write");
+        a.savePolicy(e.getModel());
+        loaded = new Enforcer("examples/rbac_model.conf", a);
+        assertEquals(new HashSet<>(e.getPolicy()), new HashSet<>(loaded.getPolicy()));
+        assertEquals(e.getGroupingPolicy(), loaded.getGroupingPolicy());
+        a.close();
+        h2.forceCloseAll();
+    }
+
+    @Test
+    public void testReadReplicas() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+
+        // An H2 database stands in for a replica that hasn't replicated the removal of bob's rule yet.
+        PooledDataSource replica = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1", "sa", "");
+        MybatisAdapter r = MybatisAdapter.builder().dataSource(replica).build();
+        r.savePolicy(e.getModel());
+        r.close();
+        PooledDataSource down = new PooledDataSource(DRIVER, "jdbc:mysql://localhost:1/casbin", USERNAME, PASSWORD);
+
+        MybatisAdapter a = MybatisAdapter.builder()
+                .jdbc(DRIVER, URL, USERNAME, PASSWORD)
+                .readReplicas(down, replica)
+                .build();
+        a.savePolicy(e.getModel());
+        a.removePolicy("p", "p", asList("bob", "data2", "write"));
+
+        // Both loads skip the replica that is down and read from the other one.
+        for (int i = 0; i < 2; i++) {
+            Enforcer loaded = new Enforcer("examples/rbac_model.conf", a);
+            assertTrue(loaded.hasPolicy("bob", "data2", "write"));
+        }
+
+        // With read-your-writes, loads read the primary right after a change.
+        a.setReadYourWrites(60000);
+        a.addPolicy("p", "p", asList("cathy", "data3", "read"));
+        Enforcer loaded = new Enforcer("examples/rbac_model.conf", a);
+        assertFalse(loaded.hasPolicy("bob", "data2", "write"));
+        assertTrue(loaded.hasPolicy("cathy", "data3", "read"));
+        a.close();
+        replica.forceCloseAll();
+    }
+
+    @Test
+    public void testWatcher() throws InterruptedException, SQLException {
+        PooledDataSource dataSource = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:watcher;DB_CLOSE_DELAY=-1", "sa", "");
+        MybatisAdapter a = MybatisAdapter.builder().dataSource(dataSource).build();
+        MybatisAdapter b = MybatisAdapter.builder().dataSource(dataSource).build();
+        a.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+
+        Enforcer e = new Enforcer("examples/rbac_model.conf", a);
+        MybatisWatcher watcher = a.newWatcher(20, 200);
+        e.setWatcher(watcher);
+        BlockingQueue<String> updates = new LinkedBlockingQueue<>();
+        watcher.setUpdateCallback(revision -> {
+            e.loadPolicy();
+            updates.add(revision);
+        });
+        b.newWatcher(20, 200);
+
+        // A burst of changes on another node is reloaded once.
+        b.addPolicy("p", "p", asList("cathy", "data3", "read"));
+        b.addPolicies("p", "p", asList(asList("cathy", "data3", "write"), asList("dave", "data4", "read")));
+        b.removePolicy("p", "p", asList("bob", "data2", "write"));
+        assertNotNull(updates.poll(5, TimeUnit.SECONDS));
+        assertTrue(e.hasPolicy("dave", "data4", "read"));
+        assertFalse(e.hasPolicy("bob", "data2", "write"));
+        assertNull(updates.poll(500, TimeUnit.MILLISECONDS));
+
+        // The changes of the node itself are not.
+        e.addPolicy("erin", "data5", "read");
+        assertNull(updates.poll(500, TimeUnit.MILLISECONDS));
+        b.removePolicy("p", "p", asList("erin", "data5", "read"));
+        assertNotNull(updates.poll(5, TimeUnit.SECONDS));
+        assertFalse(e.hasPolicy("erin", "data5", "read"));
+        a.close();
+        b.close();
+        dataSource.forceCloseAll();
+
+        // On SQL Server, a poll reads the revision row after the change of the node locking it commits.
+        // The commit doesn't wait for the poll, and the poll doesn't see the revision as another node's.
+        AtomicLong revisions = new AtomicLong();
+        AtomicBoolean rowLocked = new AtomicBoolean();
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+        MybatisWatcher own = new MybatisWatcher(() -> {
+            if (rowLocked.get()) {
+                reading.countDown();
+                try {
+                    committed.await();
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return revisions.get();
+        }, 5, 0);
+        BlockingQueue<String> ownUpdates = new LinkedBlockingQueue<>();
+        own.setUpdateCallback(ownUpdates::add);
+        rowLocked.set(true);
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        own.recordOwnRevision(1);
+        revisions.set(1);
+        rowLocked.set(false);
+        committed.countDown();
+        assertNull(ownUpdates.poll(200, TimeUnit.MILLISECONDS));
+
+        // A revision whose commit failed is forgotten, so another node committing it triggers the callback.
+        own.recordOwnRevision(2);
+        own.forgetOwnRevision(2);
+        revisions.set(2);
+        assertEquals("2", ownUpdates.poll(5, TimeUnit.SECONDS));
+        own.close();
+
+        // The watcher polls while another node holds the revision row, and the change of the node waiting for it
+        // doesn't trigger the callback, while the other node's change triggers it once committed.
+        PooledDataSource locking = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:watcherlock;DB_CLOSE_DELAY=-1", "sa", "");
+        MybatisAdapter c = MybatisAdapter.builder().dataSource(locking).build();
+        MybatisWatcher lockedWatcher = c.newWatcher(5, 0);
+        BlockingQueue<String> lockedUpdates = new LinkedBlockingQueue<>();
+        lockedWatcher.setUpdateCallback(lockedUpdates::add);
+        try (Connection connection = locking.getConnection(); Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            statement.execute("UPDATE casbin_rule_revision SET revision = revision + 1 WHERE id = 1");
+            Thread writer = new Thread(() -> c.addPolicy("p", "p", asList("frank", "data6", "read")));
+            writer.start();
+            assertNull(lockedUpdates.poll(200, TimeUnit.MILLISECONDS));
+            connection.commit();
+            writer.join(5000);
+            assertFalse(writer.isAlive());
+        }
+        assertNotNull(lockedUpdates.poll(5, TimeUnit.SECONDS));
+        assertNull(lockedUpdates.poll(200, TimeUnit.MILLISECONDS));
+        c.close();
+        locking.forceCloseAll();
+    }
+
+    @Test
+    public void testLazyLoading() {
+        PooledDataSource dataSource = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:lazy;DB_CLOSE_DELAY=-1", "sa", "");
+        MybatisAdapter a = MybatisAdapter.builder().dataSource(dataSource).build();
+        a.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+        a.addPolicy("g", "g", asList("data2_admin", "super_admin"));
+        a.addPolicy("p", "p", asList("super_admin", "data3", "read"));
+
+        Enforcer e = new Enforcer("examples/rbac_model.conf");
+        e.setAdapter(a);
+        LazyPolicyLoader loader = new LazyPolicyLoader(a, e, 4);
+        assertTrue(e.getPolicy().isEmpty());
+
+        // The roles of alice are read with her rules, two levels deep.
+        assertTrue(loader.enforce("alice", "data2", "read"));
+        assertTrue(loader.enforce("alice", "data3", "read"));
+        assertTrue(loader.enforce("alice", "data1", "read"));
+        assertEquals(6, loader.getRuleCount());
+        assertEquals(1, loader.getMissCount());
+        assertEquals(2, loader.getHitCount());
+
+        // Loading bob goes over the limit, so alice is evicted, and read again on her next request.
+        assertTrue(loader.enforce("bob", "data2", "write"));
+        assertEquals(1, loader.getEvictionCount());
+        assertEquals(1, loader.getRuleCount());
+        assertFalse(e.hasPolicy("alice", "data1", "read"));
+        assertFalse(loader.enforce("cathy", "data1", "read"));
+        assertTrue(loader.enforce("alice", "data1", "read"));
+        assertEquals(4, loader.getMissCount());
+        assertFalse(e.hasPolicy("bob", "data2", "write"));
+
+        assertTrue(loader.enforce("alice", "data3", "read"));
+        loader.invalidateAll();
+        assertTrue(e.getPolicy().isEmpty());
+        assertFalse(e.hasGroupingPolicy("alice", "data2_admin"));
+
+        Model model = new Model();
+        model.loadModelFromText("[request_definition]\nr = sub, dom, obj, act\n"
+                + "[policy_definition]\np = sub, dom, obj, act\n"
+                + "[role_definition]\ng = _, _, _\n"
+                + "[policy_effect]\ne = some(where (p.eft == allow))\n"
+                + "[matchers]\nm = g(r.sub, p.sub, r.dom) && r.dom == p.dom && r.obj == p.obj && r.act == p.act");
+        Enforcer domains = new Enforcer(model);
+        domains.setAdapter(a);
+        domains.addPolicy("admin", "domain1", "data1", "read");
+        domains.addPolicy("admin", "domain2", "data2", "read");
+        domains.addGroupingPolicy("alice", "admin", "domain1");
+        domains.addGroupingPolicy("bob", "admin", "domain2");
+        LazyPolicyLoader domainLoader = new LazyPolicyLoader(a, domains, 100);
+        domainLoader.setLoadByDomain(true);
+        assertTrue(domainLoader.enforce("alice", "domain1", "data1", "read"));
+        assertFalse(domainLoader.enforce("bob", "domain1", "data1", "read"));
+        assertEquals(2, domainLoader.getRuleCount());
+        assertTrue(domainLoader.enforce("bob", "domain2", "data2", "read"));
+        assertEquals(2, domainLoader.getMissCount());
+        assertEquals(1, domainLoader.getHitCount());
+        a.close();
+        dataSource.forceCloseAll();
+    }
+
+    @Test
+    public void testSchemaVersions() throws SQLException {
+        PooledDataSource dataSource = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:schema;DB_CLOSE_DELAY=-1", "sa", "");
+        // A table created before versions were recorded, without the id column and the rule index.
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE casbin_rule (ptype VARCHAR(100) NOT NULL, v0 VARCHAR(100), v1 VARCHAR(100), "
+                    + "v2 VARCHAR(100), v3 VARCHAR(100), v4 VARCHAR(100), v5 VARCHAR(100))");
+            statement.execute("INSERT INTO casbin_rule (ptype, v0, v1, v2) VALUES ('p', 'alice', 'data1', 'read')");
+        }
+
+        MybatisAdapter a = MybatisAdapter.builder().dataSource(dataSource).build();
+        Enforcer e = new Enforcer("examples/rbac_model.conf", a);
+        testEnforce(e, "alice", "data1", "read", true);
+        e.addPolicy("bob", "data2", "write");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            ResultSet ids = statement.executeQuery("SELECT COUNT(DISTINCT id) FROM casbin_rule");
+            assertTrue(ids.next());
+            assertEquals(2, ids.getInt(1));
+            ResultSet versions = statement.executeQuery("SELECT version FROM casbin_rule_schema WHERE table_name = 'casbin_rule'");
+            assertTrue(versions.next());
+            assertEquals(2, versions.getInt(1));
+
+            // Once the version is recorded, the next start runs no DDL, so the dropped index isn't created again.
+            statement.execute("DROP INDEX idx_casbin_rule_ptype_v0");
+            MybatisAdapter.builder().dataSource(dataSource).build().close();
+            ResultSet indexes = statement.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME = 'IDX_CASBIN_RULE_PTYPE_V0'");
+            assertTrue(indexes.next());
+            assertEquals(0, indexes.getInt(1));
+        }
+
+        // Validation passes on the current schema, and fails on a missing or outdated one.
+        MybatisAdapter validated = MybatisAdapter.builder().dataSource(dataSource).schemaMode(SchemaMode.VALIDATE).build();
+        assertEquals(2, new Enforcer("examples/rbac_model.conf", validated).getPolicy().size());
+        try {
+            MybatisAdapter.builder().dataSource(dataSource).tableName("casbin_missing").schemaMode(SchemaMode.VALIDATE).build();
+            fail("A missing schema must fail validation");
+        } catch (CasbinAdapterException expected) {
+            // The schema table doesn't exist.
+        }
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE casbin_rule_schema SET version = 1 WHERE table_name = 'casbin_rule'");
+        }
+        try {
+            MybatisAdapter.builder().dataSource(dataSource).schemaMode(SchemaMode.VALIDATE).build();
+            fail("An outdated schema must fail validation");
+        } catch (CasbinAdapterException expected) {
+            // The rule table is at version 1.
+        }
+        a.close();
+        validated.close();
+        dataSource.forceCloseAll();
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        PooledDataSource dataSource = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:stress;DB_CLOSE_DELAY=-1", "sa", "");
+        dataSource.setPoolMaximumActiveConnections(16);
+        MybatisAdapter a = MybatisAdapter.builder().dataSource(dataSource).build();
+        int rounds = 20;
+        for (int threads : new int[]{1, 4, 16}) {
+            String prefix = "t" + threads + "_";
+            List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> writers = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int writer = t;
+                writers.add(pool.submit(() -> {
+                    Random random = new Random(writer);
+                    for (int i = 0; i < rounds; i++) {
+                        String user = prefix + writer + "_" + i;
+                        List<List<String>> own = new ArrayList<>();
+                        List<List<String>> shared = new ArrayList<>();
+                        for (int j = 0; j < 10; j++) {
+                            own.add(asList(user, "data" + j, "read"));
+                            shared.add(asList(prefix + "shared", "data" + j, "write"));
+                        }
+                        // All writers remove the same rules, each in its own order.
+                        Collections.shuffle(shared, random);
+                        List<List<String>> removed = new ArrayList<>(shared);
+                        Collections.shuffle(removed, random);
+                        removed.add(asList(prefix + "missing", "data0", "write"));
+                        removed.addAll(own.subList(0, 5));
+
+                        long operation = System.nanoTime();
+                        a.addPolicies("p", "p", own);
+                        latencies.add(System.nanoTime() - operation);
+                        operation = System.nanoTime();
+                        a.addPolicies("p", "p", shared);
+                        latencies.add(System.nanoTime() - operation);
+                        operation = System.nanoTime();
+                        a.removePolicies("p", "p", removed);
+                        latencies.add(System.nanoTime() - operation);
+                        operation = System.nanoTime();
+                        a.removeFilteredPolicy("p", "p", 0, user, "data9");
+                        latencies.add(System.nanoTime() - operation);
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            long elapsed = System.nanoTime() - start;
+            pool.shutdown();
+
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            Util.logPrint(String.format("%d writers: %.0f ops/s, p50 %.2f ms, p99 %.2f ms", threads,
+                    sorted.size() * 1e9 / elapsed, sorted.get(sorted.size() / 2) / 1e6,
+                    sorted.get(sorted.size() * 99 / 100) / 1e6));
+
+            // Every writer removes the shared rules after adding them, so none are left,
+            // and each writer keeps data5 to data8 of each of its rounds.
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                ResultSet shared = statement.executeQuery("SELECT COUNT(*) FROM casbin_rule WHERE v0 = '" + prefix + "shared'");
+                assertTrue(shared.next());
+                assertEquals(0, shared.getInt(1));
+                ResultSet own = statement.executeQuery("SELECT COUNT(*), COUNT(DISTINCT v0) FROM casbin_rule WHERE v0 LIKE '"
+                        + prefix + "%' AND v1 IN ('data5', 'data6', 'data7', 'data8')");
+                assertTrue(own.next());
+                assertEquals(threads * rounds * 4, own.getInt(1));
+                assertEquals(threads * rounds, own.getInt(2));
+                ResultSet rest = statement.executeQuery("SELECT COUNT(*) FROM casbin_rule WHERE v0 LIKE '" + prefix + "%'");
+                assertTrue(rest.next());
+                assertEquals(threads * rounds * 4, rest.getInt(1));
+            }
+        }
+        a.close();
+        dataSource.forceCloseAll();
+    }
 }